@@ -4,11 +4,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Color;
+import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.FragmentTransaction;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
@@ -17,13 +19,18 @@ import android.support.v7.widget.Toolbar;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.view.View;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import net.gsantner.opoc.preference.GsPreferenceFragmentCompat;
 import net.gsantner.opoc.preference.SharedPreferencesPropertyBackend;
+import net.gsantner.opoc.util.ShareUtil;
+
+import org.json.JSONException;
 
 import io.github.lonamiwebs.stringlate.R;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
 import io.github.lonamiwebs.stringlate.classes.git.GitHub;
 import io.github.lonamiwebs.stringlate.settings.AppSettings;
 import io.github.lonamiwebs.stringlate.utilities.ContextUtils;
@@ -135,10 +142,43 @@ public class SettingsActivity extends AppCompatActivity {
                 if (key.equals(getString(R.string.pref_key__language))) {
                     activityRetVal = RESULT.CHANGE_RESTART;
                 }
+
+                if (key.equals(getString(R.string.pref_key__performance_metrics))) {
+                    showMetrics();
+                }
             }
             return false;
         }
 
+        private void showMetrics() {
+            final String metrics;
+            try {
+                metrics = Metrics.toJson().toString(2);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            final TextView textView = new TextView(getContext());
+            final int padding = (int) (16 * getResources().getDisplayMetrics().density);
+            textView.setPadding(padding, padding, padding, padding);
+            textView.setTypeface(Typeface.MONOSPACE);
+            textView.setTextIsSelectable(true);
+            textView.setText(metrics);
+
+            final ScrollView scrollView = new ScrollView(getContext());
+            scrollView.addView(textView);
+
+            new AlertDialog.Builder(getContext())
+                    .setTitle(R.string.performance_metrics)
+                    .setView(scrollView)
+                    .setPositiveButton(R.string.copy_to_clipboard, (dialog, which) ->
+                            new ShareUtil(getContext()).setClipboard(metrics))
+                    .setNeutralButton(R.string.reset, (dialog, which) -> Metrics.reset())
+                    .setNegativeButton(R.string.close, null)
+                    .show();
+        }
+
         @Override
         public synchronized void doUpdatePreferences() {
             if (isAdded() && !isDetached()) {
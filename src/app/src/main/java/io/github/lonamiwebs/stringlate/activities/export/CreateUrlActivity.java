@@ -96,6 +96,13 @@ public class CreateUrlActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing() && mPostUrlCallable != null)
+            mPostUrlCallable.cancel();
+    }
+
     public static void launchIntent(final Context ctx, final int exporterHandle) {
         ctx.startActivity(new Intent(ctx, CreateUrlActivity.class)
                 .putExtra(EXTRA_ID, exporterHandle));
@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.Random;
 
 import io.github.lonamiwebs.stringlate.R;
+import io.github.lonamiwebs.stringlate.classes.git.ForkPoller;
 import io.github.lonamiwebs.stringlate.classes.git.GitHub;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.utilities.RepoHandlerHelper;
@@ -35,6 +36,10 @@ class Exporter {
         abstract String getSuccessDescription(Context context);
 
         abstract String call(Context context, Callback.a1<String> progress) throws Exception;
+
+        // Called if the result is no longer wanted, so that call() can finish early
+        void cancel() {
+        }
     }
 
     private static int addExporter(final CallableExporter exporter) {
@@ -128,12 +133,18 @@ class Exporter {
             final String locale, final String baseBranch, final String commitMessage,
             final String username, final String token) {
         return addExporter(new CallableExporter() {
+            private final ForkPoller mForkPoller = new ForkPoller();
 
             @Override
             String getDescription(final Context context) {
                 return context.getString(R.string.creating_pr_long);
             }
 
+            @Override
+            void cancel() {
+                mForkPoller.cancel();
+            }
+
             @Override
             public String call(final Context context, final Callback.a1<String> progress) throws Exception {
                 JSONObject commitResult;
@@ -143,7 +154,7 @@ class Exporter {
                     mFailureReason = context.getString(R.string.fork_failed);
                     progress.callback(context.getString(R.string.forking_repo_long));
 
-                    JSONObject fork = GitHub.forkRepository(token, originalRepo);
+                    JSONObject fork = GitHub.forkRepository(token, originalRepo, mForkPoller);
                     if (fork == null) throw new JSONException("Resulting fork is null.");
 
                     String owner = fork.getJSONObject("owner").getString("login");
@@ -19,6 +19,7 @@ import io.github.lonamiwebs.stringlate.classes.locales.LocaleString;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourcesTranslation;
+import io.github.lonamiwebs.stringlate.classes.resources.SearchIndex;
 import io.github.lonamiwebs.stringlate.utilities.RepoHandlerHelper;
 
 import static io.github.lonamiwebs.stringlate.utilities.Constants.EXTRA_LOCALE;
@@ -112,7 +113,8 @@ public class SearchStringActivity extends AppCompatActivity {
 
     private void refreshResourcesListView(String filter) {
         ArrayList<ResourcesTranslation> rts = ResourcesTranslation.fromPairs(
-                defaultLocaleResources, secondLocaleResources, filter);
+                defaultLocaleResources, secondLocaleResources, filter == null || filter.isEmpty() ?
+                        null : mRepo.searchStrings(filter, mLocale, SearchIndex.MATCH_SUBSTRING));
 
         mResourcesListView.setAdapter(new ResourcesTranslationAdapter(this, rts));
     }
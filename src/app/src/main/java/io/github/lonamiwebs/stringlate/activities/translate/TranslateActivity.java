@@ -58,6 +58,7 @@ import io.github.lonamiwebs.stringlate.classes.repos.RepoProgress;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourceStringComparator;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourcesTranslation;
+import io.github.lonamiwebs.stringlate.classes.resources.SearchIndex;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
 import io.github.lonamiwebs.stringlate.classes.sources.GitSource;
 import io.github.lonamiwebs.stringlate.dialogs.LocaleSelectionDialog;
@@ -119,7 +120,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     //region Initialization
 
     public static void launch(final Context ctx, final RepoHandler repo) {
-        if (repo.isSyncing()) {
+        if (repo.isSyncing() || RepoSyncTask.isScheduled(repo)) {
             Toast.makeText(ctx, R.string.wait_until_sync, Toast.LENGTH_LONG).show();
         } else {
             Intent intent = new Intent(ctx, TranslateActivity.class);
@@ -401,6 +402,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     protected void onPause() {
         super.onPause();
         save();
+        mRepo.flushSettings();
     }
 
     //endregion
@@ -1025,28 +1027,17 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
     }
 
     private void updateProgress() {
-        if (mSelectedLocaleResources == null) {
+        // The progress is kept up to date as strings are translated (rather than counting
+        // them all every time), and weighted by the characters of the original strings
+        // (if you translated only long strings, it'll be closer to 100% than with small ones)
+        final RepoProgress progress = mSelectedLocaleResources == null ?
+                null : mRepo.getProgress(mSelectedLocale);
+
+        if (progress == null) {
             mProgressProgressBar.setMax(1);
             mProgressProgressBar.setProgress(0);
             mProgressTextView.setText("");
         } else {
-            // Keep track of the translated strings count and the characters of the
-            // original strings + those same characters if a translation is available.
-            // This will be used to make a weighted progress (if you translated only
-            // long strings, then this will be closer to 100% than if you translated small ones).
-            RepoProgress progress = new RepoProgress();
-            progress.stringsCount = mDefaultResources.count();
-
-            int chars;
-            for (ResTag rs : mDefaultResources) {
-                chars = rs.getContentLength();
-                progress.totalChars += chars;
-                if (mSelectedLocaleResources.contains(rs.getId())) {
-                    progress.translatedCount += 1;
-                    progress.currentChars += chars;
-                }
-            }
-
             // The progress bar will be using the weighted value
             mProgressProgressBar.setMax(progress.totalChars);
             mProgressProgressBar.setProgress(progress.currentChars);
@@ -1055,9 +1046,6 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             mProgressTextView.setText(getString(R.string.translation_progress,
                     progress.translatedCount, progress.stringsCount, 100f * progress.getProgress()
             ));
-
-            // Save the progress for the history fragment to reuse without recalculating
-            mRepo.saveProgress(progress);
         }
     }
 
@@ -1066,8 +1054,9 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
         // and JSON doesn't load the changes from the file but rather keeps a copyFile
         mRepo.settings.setStringFilter(filter);
         mFilteredIDs.clear();
-        for (ResourcesTranslation translation :
-                ResourcesTranslation.fromPairs(mDefaultResources, mSelectedLocaleResources, filter)) {
+        for (ResourcesTranslation translation : ResourcesTranslation.fromPairs(
+                mDefaultResources, mSelectedLocaleResources, filter.isEmpty() ?
+                        null : mRepo.searchStrings(filter, mSelectedLocale, SearchIndex.MATCH_SUBSTRING))) {
             mFilteredIDs.add(translation.getId());
         }
 
@@ -1173,6 +1162,7 @@ public class TranslateActivity extends AppCompatActivity implements LocaleSelect
             int i = getItemIndex(mLocaleSpinner, LocaleString.getDisplay(locale));
             mLocaleSpinner.setSelection(i);
             mSelectedLocaleResources = mRepo.loadResources(locale);
+            mRepo.trackProgress(locale, mSelectedLocaleResources);
         } else {
             mSelectedLocaleResources = null;
         }
@@ -6,10 +6,14 @@ import android.widget.Toast;
 
 import io.github.lonamiwebs.stringlate.R;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+import io.github.lonamiwebs.stringlate.classes.repos.SyncScheduler;
 import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
-import io.github.lonamiwebs.stringlate.utilities.RepoHandlerHelper;
 
-public class RepoSyncTask extends Thread {
+// Synchronizes a repository through the shared SyncScheduler, posting its progress to the UI
+public class RepoSyncTask implements SyncScheduler.Listener {
+
+    // Shared by every synchronization, so that only a few run at once (and fewer per host)
+    private static final SyncScheduler scheduler = new SyncScheduler(3, 2);
 
     private final Context mContext;
     private final RepoHandler mRepo;
@@ -17,6 +21,10 @@ public class RepoSyncTask extends Thread {
     private final Handler mHandler;
     private final boolean newRepo;
 
+    // Indexed by stage (see Messenger.OnSyncProgress), cloning takes most of the time
+    private static final float[] STAGE_WEIGHTS = {0f, 0.70f, 0.10f, 0.10f, 0.10f};
+    private final float[] mStageProgress = new float[STAGE_WEIGHTS.length]; // Only used on mHandler
+
     // If addingNew is true, and the repository fails to sync, a notice will be shown,
     // and the repository settings will be deleted so that empty repositories don't show.
     public RepoSyncTask(final Context context, final RepoHandler repo,
@@ -28,21 +36,39 @@ public class RepoSyncTask extends Thread {
         mHandler = new Handler();
     }
 
+    // Schedules the synchronization with high priority, since the user is waiting for it
+    public void start() {
+        start(SyncScheduler.PRIORITY_HIGH);
+    }
+
+    public void start(final int priority) {
+        scheduler.schedule(mRepo, mSource,
+                mContext.getResources().getDisplayMetrics().densityDpi, priority, this);
+
+        // Show it as syncing already, even if it has to wait for others to finish
+        Messenger.notifyRepoSync(mRepo, 0f);
+    }
+
+    public static boolean isScheduled(final RepoHandler repo) {
+        return scheduler.isScheduled(repo);
+    }
+
+    public static void cancel(final RepoHandler repo) {
+        scheduler.cancel(repo);
+    }
+
     @Override
-    public void run() {
-        final boolean okay =
-                RepoHandlerHelper.syncResources(mContext, mRepo, mSource, new Messenger.OnSyncProgress() {
-                    @Override
-                    public void onUpdate(final int stage, final float progress) {
-                        mHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                onProgressUpdate(stage, progress);
-                            }
-                        });
-                    }
-                });
+    public void onUpdate(final RepoHandler which, final int stage, final float progress) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onProgressUpdate(stage, progress);
+            }
+        });
+    }
 
+    @Override
+    public void onFinish(final RepoHandler which, final boolean okay) {
         mHandler.post(new Runnable() {
             @Override
             public void run() {
@@ -50,7 +76,7 @@ public class RepoSyncTask extends Thread {
                 if (okay) {
                     Messenger.notifyRepoAdded(mRepo);
                 } else {
-                    if (!mRepo.wasCancelled()) {
+                    if (!which.wasCancelled()) {
                         Toast.makeText(
                                 mContext,
                                 mContext.getString(R.string.sync_failed, mRepo.getProjectName()),
@@ -67,13 +93,14 @@ public class RepoSyncTask extends Thread {
     }
 
     private void onProgressUpdate(final int stage, float progress) {
-        progress = clamp(progress, 0f, 1f);
+        if (stage < 1 || stage >= mStageProgress.length)
+            return;
 
-        // Give stage one 75% of the weight
-        if (stage == 1)
-            progress *= 0.75f;
-        else
-            progress = 0.75f + progress * 0.25f;
+        // The stages overlap, so the overall progress is their weighted sum
+        mStageProgress[stage] = clamp(progress, 0f, 1f);
+        progress = 0f;
+        for (int i = 1; i < mStageProgress.length; ++i)
+            progress += mStageProgress[i] * STAGE_WEIGHTS[i];
 
         Messenger.notifyRepoSync(mRepo, clamp(progress, 0f, 1f));
     }
@@ -0,0 +1,276 @@
+package io.github.lonamiwebs.stringlate.classes.git;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.github.lonamiwebs.stringlate.classes.NeedleScanner;
+
+// Compares looking for needles inside every file of a checkout line by line, as
+// FileUtils.fileContains does (and GitWrapper used to), against the NeedleScanner.
+//
+// Unless a real checkout is given, one resembling an Android application is generated:
+// mostly layouts and drawables which need to be read whole, a few strings.xml and READMEs.
+//
+// Run with `./gradlew :bench:jmh -Pjmh="FileContainsBenchmark -p checkout=/path/to/repo"`.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileContainsBenchmark {
+
+    //region Members
+
+    private static final long SEED = 0x57121a7eL;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] STRINGS = {"<string", "<plurals"};
+    private static final String[] TRANSLATION_SERVICES = {
+            "transifex", "crowdin", "weblate", "zanata", "pootle", "onesky", "poeditor"
+    };
+
+    // Path to a real checkout, or empty to generate one
+    @Param({""})
+    public String checkout;
+
+    // Amount of files on the generated checkout
+    @Param({"2000"})
+    public int files;
+
+    private File mRoot;
+    private boolean mGenerated;
+    private File[] mFiles;
+
+    private NeedleScanner mStringsScanner;
+    private NeedleScanner mServicesScanner;
+
+    //endregion
+
+    //region Setup
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mGenerated = checkout.isEmpty();
+        if (mGenerated) {
+            mRoot = File.createTempFile("checkout", "");
+            if (!mRoot.delete() || !mRoot.mkdirs())
+                throw new IOException("Could not create " + mRoot);
+            generateCheckout(mRoot, files, new Random(SEED));
+        } else {
+            mRoot = new File(checkout);
+        }
+
+        final ArrayList<File> found = new ArrayList<>();
+        listFiles(mRoot, found);
+        mFiles = found.toArray(new File[found.size()]);
+
+        mStringsScanner = new NeedleScanner(STRINGS);
+        mServicesScanner = new NeedleScanner(TRANSLATION_SERVICES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mGenerated)
+            FileUtils.deleteRecursive(mRoot);
+    }
+
+    private static void listFiles(final File dir, final ArrayList<File> result) {
+        final File[] children = dir.listFiles();
+        if (children == null)
+            return;
+
+        for (File child : children) {
+            if (child.getName().startsWith("."))
+                continue;
+
+            if (child.isDirectory())
+                listFiles(child, result);
+            else
+                result.add(child);
+        }
+    }
+
+    //endregion
+
+    //region Checkout generation
+
+    private static void generateCheckout(final File root, final int files, final Random random)
+            throws IOException {
+        final File res = new File(root, "app/src/main/res");
+        write(new File(root, "README.md"), readme(random, true));
+        for (int i = 1; i < files; ++i) {
+            final int kind = random.nextInt(20);
+            if (kind == 0) {
+                write(new File(res, "values-l" + i + "/strings.xml"), strings(random));
+            } else if (kind == 1) {
+                write(new File(root, "docs/doc" + i + ".md"), readme(random, false));
+            } else if (kind < 12) {
+                write(new File(res, "layout/layout_" + i + ".xml"), layout(random));
+            } else {
+                write(new File(res, "drawable/drawable_" + i + ".xml"), drawable(random));
+            }
+        }
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+            throw new IOException("Could not create " + file.getParent());
+
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String strings(final Random random) {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+        final int count = 50 + random.nextInt(400);
+        for (int i = 0; i < count; ++i)
+            sb.append("    <string name=\"string_").append(i).append("\">Text number ")
+                    .append(random.nextInt()).append("</string>\n");
+        return sb.append("</resources>\n").toString();
+    }
+
+    private static String layout(final Random random) {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+                .append("    android:layout_width=\"match_parent\"\n")
+                .append("    android:layout_height=\"match_parent\"\n")
+                .append("    android:orientation=\"vertical\">\n");
+        final int count = 5 + random.nextInt(60);
+        for (int i = 0; i < count; ++i)
+            sb.append("    <TextView\n")
+                    .append("        android:id=\"@+id/text_").append(i).append("\"\n")
+                    .append("        android:layout_width=\"wrap_content\"\n")
+                    .append("        android:layout_height=\"wrap_content\"\n")
+                    .append("        android:text=\"@string/string_").append(random.nextInt(400)).append("\" />\n");
+        return sb.append("</LinearLayout>\n").toString();
+    }
+
+    private static String drawable(final Random random) {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<vector xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+                .append("    android:width=\"24dp\" android:height=\"24dp\"\n")
+                .append("    android:viewportWidth=\"24\" android:viewportHeight=\"24\">\n");
+        final int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; ++i) {
+            sb.append("    <path android:fillColor=\"#FF000000\" android:pathData=\"M");
+            final int points = 20 + random.nextInt(200);
+            for (int j = 0; j < points; ++j)
+                sb.append(random.nextInt(24)).append('.').append(random.nextInt(100)).append(',')
+                        .append(random.nextInt(24)).append(j % 6 == 5 ? "L" : " ");
+            sb.append("Z\" />\n");
+        }
+        return sb.append("</vector>\n").toString();
+    }
+
+    private static String readme(final Random random, final boolean mentionService) {
+        final StringBuilder sb = new StringBuilder("# Application\n\n");
+        final int count = 20 + random.nextInt(200);
+        for (int i = 0; i < count; ++i)
+            sb.append("Line ").append(i).append(" explains how to build, test and use the app.\n");
+        if (mentionService)
+            sb.append("\nHelp translating it on [Weblate](https://hosted.weblate.org/).\n");
+        return sb.toString();
+    }
+
+    //endregion
+
+    //region Legacy implementation
+
+    // FileUtils.fileContains, but closing the file when found
+    private static int legacyFileContains(final File file, final String... needles) {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                int i;
+                String line;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                while ((line = reader.readLine()) != null) {
+                    for (i = 0; i != needles.length; ++i)
+                        if (line.toLowerCase(Locale.ROOT).contains(needles[i])) {
+                            return i;
+                        }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return -1;
+    }
+
+    //endregion
+
+    //region Benchmarks
+
+    @Benchmark
+    public int legacyStrings() {
+        int found = 0;
+        for (File file : mFiles)
+            if (legacyFileContains(file, STRINGS) != -1)
+                found++;
+        return found;
+    }
+
+    @Benchmark
+    public int scannerStrings() {
+        int found = 0;
+        for (File file : mFiles)
+            if (mStringsScanner.indexIn(file) != -1)
+                found++;
+        return found;
+    }
+
+    @Benchmark
+    public int legacyTranslationServices() {
+        int found = 0;
+        for (File file : mFiles)
+            if (legacyFileContains(file, TRANSLATION_SERVICES) != -1)
+                found++;
+        return found;
+    }
+
+    @Benchmark
+    public int scannerTranslationServices() {
+        int found = 0;
+        for (File file : mFiles)
+            if (mServicesScanner.indexIn(file) != -1)
+                found++;
+        return found;
+    }
+
+    //endregion
+}
@@ -0,0 +1,99 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Measures the operations done on already loaded Resources, such as the
+// sorting done to list the string IDs, or looking up many tags by their ID.
+//
+// Run with `./gradlew :bench:jmh -Pjmh="ResourcesBenchmark"`.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourcesBenchmark {
+
+    //region Members
+
+    private static final long SEED = 0x57121a7eL;
+
+    @Param({"10000"})
+    public int tags;
+
+    private Resources mResources;
+    private String[] mIds;
+
+    private Comparator<ResTag> mAlphabetically;
+    private Comparator<ResTag> mByLength;
+
+    //endregion
+
+    //region Setup
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, XmlPullParserException {
+        final byte[] xml = StringsXmlCorpus.generate(tags, SEED).getBytes(Charset.forName("UTF-8"));
+        mResources = Resources.empty();
+        ResourcesParser.loadFromXml(new ByteArrayInputStream(xml),
+                mResources, XmlPullParserFactory.newInstance().newPullParser());
+
+        final ArrayList<String> ids = new ArrayList<>(mResources.count());
+        for (ResTag rt : mResources)
+            ids.add(rt.getId());
+        mIds = ids.toArray(new String[ids.size()]);
+
+        mAlphabetically = ResourceStringComparator.getStringsComparator(
+                ResourceStringComparator.SORT_ALPHABETICALLY);
+        mByLength = ResourceStringComparator.getStringsComparator(
+                ResourceStringComparator.SORT_STRING_LENGTH);
+    }
+
+    //endregion
+
+    //region Benchmarks
+
+    @Benchmark
+    public Iterator<ResTag> sortIteratorAlphabetically() {
+        return mResources.sortIterator(mAlphabetically, null);
+    }
+
+    @Benchmark
+    public Iterator<ResTag> sortIteratorByLength() {
+        return mResources.sortIterator(mByLength, null);
+    }
+
+    @Benchmark
+    public int getTagById() {
+        int found = 0;
+        for (String id : mIds)
+            if (mResources.getTag(id) != null)
+                found++;
+        return found;
+    }
+
+    //endregion
+}
@@ -0,0 +1,139 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+// Measures the load (XML -> Resources), save (Resources -> XML), clean and
+// template application paths of the ResourcesParser, over generated corpora.
+//
+// Run with `./gradlew :bench:jmh`, which also reports the allocation rate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourcesParserBenchmark {
+
+    //region Members
+
+    private static final long SEED = 0x57121a7eL;
+
+    @Param({"1000", "10000", "100000"})
+    public int tags;
+
+    private XmlPullParserFactory mFactory;
+    private File mWorkDir;
+
+    private String mDefaultXml; // The original strings.xml, as found on the repository
+    private byte[] mDefaultBytes;
+    private File mTemplate; // The above strings.xml once cleaned
+    private File mCleanOut;
+    private TemplatePlan mPlan; // The above template once compiled
+
+    private Resources mTranslation; // A partial translation for the template
+    private ByteArrayOutputStream mOut;
+
+    //endregion
+
+    //region Setup
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, XmlPullParserException {
+        final Charset utf8 = Charset.forName("UTF-8");
+        mFactory = XmlPullParserFactory.newInstance();
+
+        mWorkDir = File.createTempFile("stringlate_bench", "");
+        if (!mWorkDir.delete() || !mWorkDir.mkdirs())
+            throw new IOException("Could not create the working directory");
+
+        mDefaultXml = StringsXmlCorpus.generate(tags, SEED);
+        mDefaultBytes = mDefaultXml.getBytes(utf8);
+
+        mTemplate = new File(mWorkDir, "default/strings.xml");
+        if (!ResourcesParser.cleanXml(mDefaultXml, mTemplate))
+            throw new IOException("The generated corpus has no translatable strings");
+
+        mCleanOut = new File(mWorkDir, "clean/strings.xml");
+        mPlan = TemplatePlan.fromFile(mTemplate);
+
+        mTranslation = Resources.empty();
+        final String translated = StringsXmlCorpus.generate(tags, SEED, 0.8f, "tr ");
+        ResourcesParser.loadFromXml(new ByteArrayInputStream(translated.getBytes(utf8)),
+                mTranslation, mFactory.newPullParser());
+
+        mOut = new ByteArrayOutputStream(mDefaultBytes.length * 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteRecursive(mWorkDir);
+    }
+
+    //endregion
+
+    //region Benchmarks
+
+    @Benchmark
+    public Resources loadFromXml() throws IOException, XmlPullParserException {
+        final Resources resources = Resources.empty();
+        ResourcesParser.loadFromXml(new ByteArrayInputStream(mDefaultBytes),
+                resources, mFactory.newPullParser());
+        return resources;
+    }
+
+    @Benchmark
+    public int parseToXml() throws XmlPullParserException {
+        mOut.reset();
+        ResourcesParser.parseToXml(mTranslation, mOut, mFactory.newSerializer());
+        return mOut.size();
+    }
+
+    @Benchmark
+    public boolean cleanXml() {
+        return ResourcesParser.cleanXml(mDefaultXml, mCleanOut);
+    }
+
+    @Benchmark
+    public int applyTemplate() {
+        mOut.reset();
+        ResourcesParser.applyTemplate(mTemplate, mTranslation, mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public int applyTemplatePlan() {
+        mOut.reset();
+        ResourcesParser.applyTemplate(mPlan, mTranslation, mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public TemplatePlan loadTemplatePlan() {
+        return TemplatePlan.fromFile(mTemplate);
+    }
+
+    //endregion
+}
@@ -0,0 +1,124 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.util.Random;
+
+// Generates synthetic strings.xml files resembling those found on real applications,
+// so that the benchmarks can work on repeatable inputs of any arbitrary size.
+//
+// Roughly 70% of the tags are <string>, 15% <string-array> and 15% <plurals>. A few
+// of them are marked as untranslatable, and the contents mix plain text, escaped
+// characters, format arguments, entities and inline (X|HT)ML markup.
+class StringsXmlCorpus {
+
+    //region Constants
+
+    private static final String[] WORDS = {
+            "account", "settings", "download", "repository", "translation", "sync", "error",
+            "please", "try", "again", "later", "file", "saved", "cannot", "open", "the", "your",
+            "new", "language", "string", "remove", "delete", "confirm", "share", "export"
+    };
+
+    // "{}" is replaced with the actual words
+    private static final String[] CONTENT_DECORATIONS = {
+            "{}", "{} %1$s and %2$d", "Don\\'t {}", "<b>{}</b>", "{} &amp; more",
+            "<i>{}</i>\\n<u>details</u>", "\\\"{}\\\"", "&lt;{}&gt;"
+    };
+
+    private static final String[] QUANTITIES = {"zero", "one", "two", "few", "many", "other"};
+
+    //endregion
+
+    //region Generation
+
+    // Generates a strings.xml containing the given amount of top-level tags
+    static String generate(final int tags, final long seed) {
+        return generate(tags, seed, 1f, "");
+    }
+
+    // Generates a strings.xml as above, but only keeping roughly `ratio` of the tags
+    // (e.g. to mimic a partial translation) and prefixing the contents with `prefix`.
+    // The same seed will yield the same names, so that templates and translations match.
+    static String generate(final int tags, final long seed, final float ratio, final String prefix) {
+        final Random random = new Random(seed);
+        final Random keep = new Random(seed ^ 0x5DEECE66DL);
+        final StringBuilder sb = new StringBuilder(tags * 96);
+
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        sb.append("<resources xmlns:tools=\"http://schemas.android.com/tools\">\n");
+        for (int i = 0; i < tags; ++i) {
+            final int kind = random.nextInt(100);
+            final boolean translatable = random.nextInt(50) != 0;
+            final boolean kept = keep.nextFloat() < ratio;
+
+            if (kind < 70) {
+                final String content = content(random, prefix);
+                if (kept)
+                    appendString(sb, i, content, translatable);
+            } else if (kind < 85) {
+                final int count = 3 + random.nextInt(6);
+                final String[] items = new String[count];
+                for (int j = 0; j < count; ++j)
+                    items[j] = content(random, prefix);
+                if (kept)
+                    appendStringArray(sb, i, items, translatable);
+            } else {
+                final int count = 2 + random.nextInt(QUANTITIES.length - 1);
+                final String[] items = new String[count];
+                for (int j = 0; j < count; ++j)
+                    items[j] = content(random, prefix);
+                if (kept)
+                    appendPlurals(sb, i, items, translatable);
+            }
+        }
+        sb.append("</resources>\n");
+        return sb.toString();
+    }
+
+    private static void appendString(final StringBuilder sb, final int i,
+                                     final String content, final boolean translatable) {
+        sb.append("    <string name=\"string_").append(i).append('"');
+        if (!translatable)
+            sb.append(" translatable=\"false\"");
+        sb.append('>').append(content).append("</string>\n");
+    }
+
+    private static void appendStringArray(final StringBuilder sb, final int i,
+                                          final String[] items, final boolean translatable) {
+        sb.append("    <string-array name=\"array_").append(i).append('"');
+        if (!translatable)
+            sb.append(" translatable=\"false\"");
+        sb.append(">\n");
+        for (String item : items)
+            sb.append("        <item>").append(item).append("</item>\n");
+        sb.append("    </string-array>\n");
+    }
+
+    private static void appendPlurals(final StringBuilder sb, final int i,
+                                      final String[] items, final boolean translatable) {
+        sb.append("    <plurals name=\"plurals_").append(i).append('"');
+        if (!translatable)
+            sb.append(" translatable=\"false\"");
+        sb.append(">\n");
+        for (int j = 0; j < items.length; ++j) {
+            // Always finish with "other", as the CLDR rules require
+            final String quantity = j == items.length - 1 ? "other" : QUANTITIES[j];
+            sb.append("        <item quantity=\"").append(quantity).append("\">")
+                    .append(items[j]).append("</item>\n");
+        }
+        sb.append("    </plurals>\n");
+    }
+
+    private static String content(final Random random, final String prefix) {
+        final StringBuilder sb = new StringBuilder(prefix);
+        final int words = 2 + random.nextInt(10);
+        for (int i = 0; i < words; ++i) {
+            if (i != 0)
+                sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return CONTENT_DECORATIONS[random.nextInt(CONTENT_DECORATIONS.length)]
+                .replace("{}", sb);
+    }
+
+    //endregion
+}
@@ -0,0 +1,97 @@
+package io.github.lonamiwebs.stringlate.classes.resources.tags;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+// Compares deciding whether the content of a string is well-formed markup by parsing it
+// into a DOM, as ResTag.sanitizeContent used to, against the MarkupValidator.
+//
+// Run with `./gradlew :bench:jmh -Pjmh="MarkupValidatorBenchmark"`.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkupValidatorBenchmark {
+
+    //region Members
+
+    private static final long SEED = 0x57121a7eL;
+    private static final int CONTENTS = 1000;
+
+    // Strings as found on locales heavy in formatting, "{}" is replaced with a number
+    private static final String[] CONTENT_TEMPLATES = {
+            "<b>Bold {}</b> and <i>italic</i>",
+            "Downloaded <xliff:g id=\"count\">%1$d</xliff:g> of {} files",
+            "<u>Terms</u> &amp; <a href=\"https://example.com/{}\">conditions</a>",
+            "<![CDATA[<font color=\"red\">{}</font>]]>",
+            "Unclosed <b>tag {}",
+            "Use a < b and {} > c"
+    };
+
+    private String[] mContents;
+
+    //endregion
+
+    //region Setup
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(SEED);
+        mContents = new String[CONTENTS];
+        for (int i = 0; i < CONTENTS; ++i)
+            mContents[i] = CONTENT_TEMPLATES[random.nextInt(CONTENT_TEMPLATES.length)]
+                    .replace("{}", Integer.toString(i));
+    }
+
+    //endregion
+
+    //region Benchmarks
+
+    @Benchmark
+    public int domParser() {
+        int wellFormed = 0;
+        for (String content : mContents) {
+            try {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setValidating(false);
+                factory.setNamespaceAware(true);
+
+                DocumentBuilder builder = factory.newDocumentBuilder();
+                builder.parse(new InputSource(new StringReader("<a>" + content + "</a>")));
+                wellFormed++;
+            } catch (Exception ignored) {
+            }
+        }
+        return wellFormed;
+    }
+
+    @Benchmark
+    public int markupValidator() {
+        int wellFormed = 0;
+        for (String content : mContents)
+            if (MarkupValidator.isWellFormed(content))
+                wellFormed++;
+        return wellFormed;
+    }
+
+    //endregion
+}
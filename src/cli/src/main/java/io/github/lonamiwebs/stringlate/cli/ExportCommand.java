@@ -0,0 +1,97 @@
+package io.github.lonamiwebs.stringlate.cli;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+
+// Applies the translations of a locale to every template of a repository, and writes
+// the results under the output directory mirroring where they belong on the repository
+class ExportCommand {
+
+    static JSONObject run(final Main.Options options) {
+        final long start = System.nanoTime();
+        final JSONObject result = new JSONObject();
+        final JSONArray files = new JSONArray();
+        boolean okay = true;
+        try {
+            result.put("command", "export");
+
+            final RepoHandler repo = Main.findRepository(options, options.arguments.get(0));
+            if (repo == null) {
+                System.err.println("No synced repository matches " + options.arguments.get(0));
+                return result.put("ok", false);
+            }
+            result.put("repository", Main.describe(repo)).put("locale", options.locale);
+
+            if (!repo.getLocales().contains(options.locale)) {
+                System.err.println("The repository has no translations for " + options.locale);
+                return result.put("ok", false);
+            }
+
+            // Templates whose remote path is unknown are placed on a values-xx directory
+            final HashMap<File, String> paths = repo.getTemplateRemotePaths(options.locale);
+            for (File template : repo.getDefaultResourcesFiles()) {
+                if (!paths.containsKey(template))
+                    paths.put(template, "values-" + options.locale + "/" + template.getName());
+            }
+
+            for (Map.Entry<File, String> entry : paths.entrySet()) {
+                final File template = entry.getKey();
+                if (!repo.canApplyTemplate(template, options.locale))
+                    continue; // Nothing was translated on this file
+
+                final long fileStart = System.nanoTime();
+                final File out = new File(options.out, entry.getValue());
+                final boolean applied = export(repo, template, options.locale, out);
+                okay &= applied;
+
+                files.put(new JSONObject()
+                        .put("template", template.getName())
+                        .put("path", out.getPath())
+                        .put("ok", applied)
+                        .put("bytes", applied ? out.length() : 0)
+                        .put("elapsed_ms", Main.toMillis(System.nanoTime() - fileStart)));
+
+                if (!options.json)
+                    System.out.println(String.format("%-4s %s", applied ? "ok" : "fail", out.getPath()));
+            }
+
+            result.put("ok", okay)
+                    .put("files", files)
+                    .put("elapsed_ms", Main.toMillis(System.nanoTime() - start));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private static boolean export(final RepoHandler repo, final File template,
+                                  final String locale, final File out) {
+        if (!out.getParentFile().isDirectory() && !out.getParentFile().mkdirs())
+            return false;
+
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(out);
+            return repo.applyTemplate(template, locale, stream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -1,18 +1,232 @@
 package io.github.lonamiwebs.stringlate.cli;
 
-import io.github.lonamiwebs.stringlate.classes.resources.ResourceStringComparator;
-import io.github.lonamiwebs.stringlate.settings.AppSettings;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
+import io.github.lonamiwebs.stringlate.classes.SettingsStore;
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+
+// Headless Stringlate, to synchronize and export many repositories from a terminal (or CI):
+//
+//   stringlate [options] sync <repo-url>... | --all
+//   stringlate [options] export <repo> --locale <xx> --out <dir>
+//   stringlate [options] status
+//
+// With --json, a single JSON object describing the result is printed to the standard output.
+// The exit code is 0 if everything went okay, 1 if anything failed, and 2 on wrong usage.
 public class Main {
 
-    public static void main(String[] args) {
-        AppSettings appSettings = new AppSettings();
-        System.out.println(appSettings.getPathToPropertiesFile());
+    //region Options
+
+    static class Options {
+        File root = new File(System.getProperty("user.home"), ".stringlate");
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int perHost = 2;
+        int iconDpi = 160; // There's no screen, so any icon will do
+        int fsync = AtomicFile.SYNC_FILE;
+        boolean json;
+        boolean metrics;
+        boolean all;
+        String branch;
+        String locale;
+        File out;
+        String command;
+        final ArrayList<String> arguments = new ArrayList<>();
+
+        File getWorkDir() {
+            return new File(root, "repos");
+        }
+
+        File getCacheDir() {
+            return new File(root, "cache");
+        }
+    }
+
+    private static final String USAGE = "" +
+            "usage: stringlate [options] <command> [arguments]\n" +
+            "\n" +
+            "commands:\n" +
+            "  sync <repo-url>...             clone or update the repositories and merge their strings\n" +
+            "  sync --all                     sync every repository which was synced before\n" +
+            "  export <repo> --locale <xx> --out <dir>\n" +
+            "                                 apply the translations to the templates and write them\n" +
+            "  status                         list the repositories and their translated strings\n" +
+            "\n" +
+            "options:\n" +
+            "  --root <dir>      where repositories are kept (default ~/.stringlate)\n" +
+            "  --jobs <n>        how many repositories to work on at once (default: cores)\n" +
+            "  --per-host <n>    how many repositories to sync at once from the same host (default 2)\n" +
+            "  --branch <name>   branch to sync (default: the one last synced, or the remote's default)\n" +
+            "  --fsync <policy>  none, file (default) or dir, how much to wait for files to reach the disk\n" +
+            "  --json            print the result as JSON\n" +
+            "  --metrics         also print where the time went (parsing, merging, network…)\n";
+
+    // Returns null if the arguments are wrong
+    static Options parseOptions(final String[] args) {
+        final Options options = new Options();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--root":
+                        options.root = new File(args[++i]);
+                        break;
+                    case "--jobs":
+                        options.jobs = Integer.parseInt(args[++i]);
+                        break;
+                    case "--per-host":
+                        options.perHost = Integer.parseInt(args[++i]);
+                        break;
+                    case "--fsync":
+                        options.fsync = parseSyncPolicy(args[++i]);
+                        if (options.fsync < 0)
+                            return null;
+                        break;
+                    case "--json":
+                        options.json = true;
+                        break;
+                    case "--metrics":
+                        options.metrics = true;
+                        break;
+                    case "--all":
+                        options.all = true;
+                        break;
+                    case "--branch":
+                        options.branch = args[++i];
+                        break;
+                    case "--locale":
+                        options.locale = args[++i];
+                        break;
+                    case "--out":
+                        options.out = new File(args[++i]);
+                        break;
+                    default:
+                        if (arg.startsWith("--"))
+                            return null;
+                        else if (options.command == null)
+                            options.command = arg;
+                        else
+                            options.arguments.add(arg);
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+
+        if (options.command == null || options.jobs < 1 || options.perHost < 1)
+            return null;
+
+        return options;
+    }
+
+    // Returns -1 if the policy is unknown
+    private static int parseSyncPolicy(final String policy) {
+        switch (policy) {
+            case "none":
+                return AtomicFile.SYNC_NONE;
+            case "file":
+                return AtomicFile.SYNC_FILE;
+            case "dir":
+                return AtomicFile.SYNC_FILE_AND_DIRECTORY;
+            default:
+                return -1;
+        }
+    }
+
+    //endregion
+
+    //region Running commands
+
+    public static void main(final String[] args) {
+        final int code = run(args);
+        SettingsStore.flushAll(); // The writer won't get the chance after exiting
+        System.exit(code);
+    }
+
+    static int run(final String[] args) {
+        final Options options = parseOptions(args);
+        if (options == null) {
+            System.err.print(USAGE);
+            return 2;
+        }
+        AtomicFile.setSyncPolicy(options.fsync);
+
+        final JSONObject result;
+        switch (options.command) {
+            case "sync":
+                if (options.all == !options.arguments.isEmpty()) {
+                    System.err.print(USAGE);
+                    return 2;
+                }
+                result = SyncCommand.run(options);
+                break;
+            case "export":
+                if (options.arguments.size() != 1 || options.locale == null || options.out == null) {
+                    System.err.print(USAGE);
+                    return 2;
+                }
+                result = ExportCommand.run(options);
+                break;
+            case "status":
+                result = StatusCommand.run(options);
+                break;
+            default:
+                System.err.print(USAGE);
+                return 2;
+        }
+
+        try {
+            if (options.json) {
+                if (options.metrics)
+                    result.put("metrics", Metrics.toJson());
+
+                System.out.println(result.toString(2));
+            } else if (options.metrics) {
+                System.out.println(Metrics.toJson().toString(2));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return 1;
+        }
+
+        return result.optBoolean("ok") ? 0 : 1;
+    }
+
+    //endregion
 
-        appSettings.setStringSortMode(ResourceStringComparator.SORT_STRING_LENGTH);
-        appSettings.setDownloadIconsAllowed(false);
-        System.out.println("Icons allowed: " + appSettings.isDownloadIconsAllowed());
-        appSettings.setDownloadIconsAllowed(true);
-        System.out.println("Icons allowed: " + appSettings.isDownloadIconsAllowed());
+    //region Utilities
+
+    // Finds a previously synced repository by its source URL, its name or its directory
+    static RepoHandler findRepository(final Options options, final String query) {
+        for (RepoHandler repo : RepoHandler.listRepositories(options.getWorkDir(), options.getCacheDir())) {
+            if (repo.settings.getSource().equals(query) || repo.toString().equals(query) ||
+                    repo.getProjectName().equals(query) || repo.mRoot.getName().equals(query))
+                return repo;
+        }
+        return null;
+    }
+
+    static JSONObject describe(final RepoHandler repo) throws JSONException {
+        return new JSONObject()
+                .put("name", repo.getProjectName())
+                .put("source", repo.settings.getSource())
+                .put("root", repo.mRoot.getAbsolutePath());
+    }
+
+    static long toMillis(final long nanos) {
+        return nanos / 1000000L;
+    }
+
+    static String formatMillis(final long millis) {
+        return String.format(Locale.ENGLISH, "%.1fs", millis / 1000f);
     }
+
+    //endregion
 }
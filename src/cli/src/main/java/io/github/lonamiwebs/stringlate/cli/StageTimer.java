@@ -0,0 +1,76 @@
+package io.github.lonamiwebs.stringlate.cli;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+
+// Keeps track of when each stage of a synchronization started and finished, relative
+// to when the timer was created. Stages overlap, so each is timed on its own.
+class StageTimer {
+
+    // Indexed by stage, see Messenger.OnSyncProgress
+    static final String[] STAGE_NAMES = {null, "clone", "parse", "merge", "write"};
+
+    private final long mCreated = System.nanoTime();
+    private final long[] mStarted = new long[STAGE_NAMES.length];
+    private final long[] mFinished = new long[STAGE_NAMES.length];
+    private long mDone;
+
+    synchronized void onUpdate(final int stage, final float progress) {
+        if (stage < 1 || stage >= STAGE_NAMES.length)
+            return;
+
+        final long now = System.nanoTime();
+        if (mStarted[stage] == 0)
+            mStarted[stage] = now;
+        if (progress >= 1f && mFinished[stage] == 0)
+            mFinished[stage] = now;
+    }
+
+    synchronized void onFinish() {
+        mDone = System.nanoTime();
+    }
+
+    synchronized long getElapsedMillis() {
+        return Main.toMillis((mDone == 0 ? System.nanoTime() : mDone) - mCreated);
+    }
+
+    // Milliseconds in between the stage starting and finishing (or the end), -1 if never started
+    synchronized long getStageMillis(final int stage) {
+        if (mStarted[stage] == 0)
+            return -1;
+
+        final long end = mFinished[stage] != 0 ? mFinished[stage] :
+                (mDone != 0 ? mDone : System.nanoTime());
+        return Main.toMillis(end - mStarted[stage]);
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        final JSONObject result = new JSONObject();
+        for (int stage = Messenger.OnSyncProgress.STAGE_CLONE; stage < STAGE_NAMES.length; ++stage) {
+            if (mStarted[stage] == 0)
+                continue;
+
+            result.put(STAGE_NAMES[stage], new JSONObject()
+                    .put("start_ms", Main.toMillis(mStarted[stage] - mCreated))
+                    .put("elapsed_ms", getStageMillis(stage)));
+        }
+        return result;
+    }
+
+    // E.g. "clone 3.1s, parse 0.4s, merge 0.6s, write 0.2s"
+    synchronized String toText() {
+        final StringBuilder sb = new StringBuilder();
+        for (int stage = Messenger.OnSyncProgress.STAGE_CLONE; stage < STAGE_NAMES.length; ++stage) {
+            final long millis = getStageMillis(stage);
+            if (millis < 0)
+                continue;
+
+            if (sb.length() != 0)
+                sb.append(", ");
+            sb.append(STAGE_NAMES[stage]).append(' ').append(Main.formatMillis(millis));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.lonamiwebs.stringlate.cli;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+
+// Lists every synced repository along with how many of its strings are translated
+// on each locale. Loading resources can be slow, so --jobs repositories are loaded at once
+class StatusCommand {
+
+    static JSONObject run(final Main.Options options) {
+        final long start = System.nanoTime();
+        final ArrayList<RepoHandler> repos =
+                RepoHandler.listRepositories(options.getWorkDir(), options.getCacheDir());
+
+        final ArrayList<Callable<JSONObject>> tasks = new ArrayList<>(repos.size());
+        for (final RepoHandler repo : repos) {
+            tasks.add(new Callable<JSONObject>() {
+                @Override
+                public JSONObject call() throws Exception {
+                    return status(repo);
+                }
+            });
+        }
+
+        boolean okay = true;
+        final JSONArray results = new JSONArray();
+        final ExecutorService executor = Executors.newFixedThreadPool(options.jobs);
+        try {
+            for (Future<JSONObject> future : executor.invokeAll(tasks)) {
+                try {
+                    final JSONObject status = future.get();
+                    results.put(status);
+                    if (!options.json)
+                        System.out.println(toText(status));
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    okay = false;
+                }
+            }
+        } catch (InterruptedException | JSONException e) {
+            e.printStackTrace();
+            okay = false;
+        } finally {
+            executor.shutdown();
+        }
+
+        final JSONObject result = new JSONObject();
+        try {
+            result.put("command", "status")
+                    .put("ok", okay)
+                    .put("elapsed_ms", Main.toMillis(System.nanoTime() - start))
+                    .put("repositories", results);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private static JSONObject status(final RepoHandler repo) throws JSONException {
+        final JSONObject locales = new JSONObject();
+        for (String locale : repo.getLocales())
+            locales.put(locale, repo.loadResources(locale).count());
+
+        return Main.describe(repo)
+                .put("strings", repo.loadDefaultResources().count())
+                .put("locales", locales);
+    }
+
+    // E.g. "Stringlate (123 strings): de 120, es 98"
+    private static String toText(final JSONObject status) throws JSONException {
+        final StringBuilder sb = new StringBuilder()
+                .append(status.getString("name")).append(" (")
+                .append(status.getInt("strings")).append(" strings)");
+
+        final JSONObject locales = status.getJSONObject("locales");
+        final JSONArray names = locales.names();
+        if (names != null) {
+            final ArrayList<String> sorted = new ArrayList<>(names.length());
+            for (int i = 0; i < names.length(); ++i)
+                sorted.add(names.getString(i));
+            Collections.sort(sorted);
+
+            for (int i = 0; i < sorted.size(); ++i) {
+                sb.append(i == 0 ? ": " : ", ").append(sorted.get(i))
+                        .append(' ').append(locales.getInt(sorted.get(i)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.lonamiwebs.stringlate.cli;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import io.github.lonamiwebs.stringlate.classes.git.GitWrapper;
+import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
+import io.github.lonamiwebs.stringlate.classes.repos.SyncScheduler;
+import io.github.lonamiwebs.stringlate.classes.sources.GitSource;
+
+// Synchronizes the given repositories (or all of them) through a SyncScheduler, so
+// --jobs and --per-host bound how many are worked on at once, and times every stage
+class SyncCommand {
+
+    private static class Job implements SyncScheduler.Listener {
+        final RepoHandler repo;
+        final boolean isNew;
+        final StageTimer timer = new StageTimer();
+        final CountDownLatch done;
+        volatile boolean okay;
+
+        Job(final RepoHandler repo, final CountDownLatch done) {
+            this.repo = repo;
+            this.done = done;
+            isNew = !repo.hasDefaultLocale();
+        }
+
+        @Override
+        public void onUpdate(final RepoHandler which, final int stage, final float progress) {
+            timer.onUpdate(stage, progress);
+        }
+
+        @Override
+        public void onFinish(final RepoHandler which, final boolean okay) {
+            timer.onFinish();
+            this.okay = okay;
+            done.countDown();
+        }
+    }
+
+    // The command line only knows how to sync from git. Unless told otherwise, stick to the
+    // branch the repository was last synced from, or HEAD (the remote's default) if new
+    private static String getBranch(final RepoHandler repo, final Main.Options options) {
+        if (options.branch != null)
+            return options.branch;
+
+        final String branch = repo.getGitBranch();
+        return branch == null ? "HEAD" : branch;
+    }
+
+    static JSONObject run(final Main.Options options) {
+        final long start = System.nanoTime();
+
+        final ArrayList<RepoHandler> repos;
+        if (options.all) {
+            repos = RepoHandler.listRepositories(options.getWorkDir(), options.getCacheDir());
+        } else {
+            repos = new ArrayList<>(options.arguments.size());
+            for (String url : options.arguments)
+                repos.add(new RepoHandler(GitWrapper.getGitUri(url),
+                        options.getWorkDir(), options.getCacheDir()));
+        }
+
+        final CountDownLatch done = new CountDownLatch(repos.size());
+        final ArrayList<Job> jobs = new ArrayList<>(repos.size());
+        final SyncScheduler scheduler = new SyncScheduler(options.jobs, options.perHost);
+        try {
+            for (RepoHandler repo : repos) {
+                final Job job = new Job(repo, done);
+                jobs.add(job);
+                // If the same repository is given twice, it finishes along the first one
+                scheduler.schedule(repo, new GitSource(repo.settings.getSource(), getBranch(repo, options)),
+                        options.iconDpi, SyncScheduler.PRIORITY_NORMAL, job);
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            scheduler.shutdown();
+        }
+
+        boolean allOkay = true;
+        final JSONArray results = new JSONArray();
+        for (Job job : jobs) {
+            allOkay &= job.okay;
+            try {
+                results.put(Main.describe(job.repo)
+                        .put("ok", job.okay)
+                        .put("elapsed_ms", job.timer.getElapsedMillis())
+                        .put("locales", new JSONArray(job.repo.getLocales()))
+                        .put("stages", job.timer.toJson()));
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+
+            if (!options.json)
+                System.out.println(String.format("%-4s %s (%s: %s)", job.okay ? "ok" : "fail",
+                        job.repo.getProjectName(), Main.formatMillis(job.timer.getElapsedMillis()),
+                        job.timer.toText()));
+
+            // Don't leave half cloned repositories behind, they'd show up on --all.
+            // Only done now since describing the repository may save its settings
+            if (!job.okay && job.isNew)
+                job.repo.delete();
+        }
+
+        final JSONObject result = new JSONObject();
+        try {
+            result.put("command", "sync")
+                    .put("ok", allOkay)
+                    .put("elapsed_ms", Main.toMillis(System.nanoTime() - start))
+                    .put("repositories", results);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+}
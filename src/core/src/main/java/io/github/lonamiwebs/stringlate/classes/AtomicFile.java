@@ -0,0 +1,225 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+
+// Writes a file so that it's never seen half written, even if the process dies or the
+// device loses power while writing. The new contents go to a temporary file next to it
+// (a new one on every write, so that writers of the same file don't mix their contents),
+// which is synced to disk (depending on the policy) and then renamed over the old file,
+// so the file either has its old contents or the new ones, never a truncated mix:
+//
+//     final AtomicFile file = new AtomicFile(xmlFile);
+//     final FileOutputStream out = file.startWrite();
+//     …
+//     file.finishWrite(out); // Or file.failWrite(out) if something went wrong
+//
+// The rename itself is only durable once the directory is synced. While a batch is open
+// (e.g. during a sync, which writes many files) directories are synced once, when the
+// last batch ends, rather than once for every file written to them.
+public class AtomicFile {
+
+    //region Constants and members
+
+    // Renaming is atomic, but on power loss the file may have its old contents (or even
+    // be empty if the system wrote the rename before the data, which most don't anymore)
+    public static final int SYNC_NONE = 0;
+
+    // The new contents are on disk before renaming, but the rename may be lost on power loss
+    public static final int SYNC_FILE = 1;
+
+    // The rename is also on disk, once the write finishes or the batch ends
+    public static final int SYNC_FILE_AND_DIRECTORY = 2;
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final Metrics.Timer FILE_SYNC_TIMER = Metrics.timer("fsync.file");
+    private static final Metrics.Timer DIRECTORY_SYNC_TIMER = Metrics.timer("fsync.directory");
+
+    private static volatile int syncPolicy = SYNC_FILE;
+
+    private static final Object batchLock = new Object();
+    private static int openBatches;
+    private static final HashSet<File> unsyncedDirectories = new HashSet<>();
+
+    private final File mBaseFile;
+    private File mTempFile; // Made on startWrite()
+    private final boolean mDurable;
+
+    //endregion
+
+    //region Constructor
+
+    public AtomicFile(final File baseFile) {
+        this(baseFile, true);
+    }
+
+    // Files which aren't durable are never synced to disk whatever the policy, because
+    // they can be made again (e.g. caches), but they're still never seen half written
+    public AtomicFile(final File baseFile, final boolean durable) {
+        mBaseFile = baseFile;
+        mDurable = durable;
+    }
+
+    //endregion
+
+    //region Policy and batches
+
+    public static int getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public static void setSyncPolicy(final int policy) {
+        if (policy < SYNC_NONE || policy > SYNC_FILE_AND_DIRECTORY)
+            throw new IllegalArgumentException("Unknown sync policy " + policy);
+        syncPolicy = policy;
+    }
+
+    // Defers syncing directories until every batch began has ended. Must always be paired
+    // with endBatch() (in a finally block), and may be used from any thread.
+    public static void beginBatch() {
+        synchronized (batchLock) {
+            openBatches++;
+        }
+    }
+
+    public static void endBatch() {
+        final File[] directories;
+        synchronized (batchLock) {
+            if (--openBatches > 0)
+                return;
+
+            directories = unsyncedDirectories.toArray(new File[0]);
+            unsyncedDirectories.clear();
+        }
+        for (File directory : directories)
+            syncDirectory(directory);
+    }
+
+    //endregion
+
+    //region Writing
+
+    public File getBaseFile() {
+        return mBaseFile;
+    }
+
+    public static boolean isTempFile(final File file) {
+        return file.getName().endsWith(TEMP_EXTENSION);
+    }
+
+    // Returns the stream to write the new contents to, which isn't the file itself yet
+    public FileOutputStream startWrite() throws IOException {
+        final File parent = mBaseFile.getParentFile();
+        if (parent != null && !parent.isDirectory())
+            parent.mkdirs();
+
+        // Hidden and made from the name, as in ".strings.xml.1234.tmp", which is long enough
+        // for createTempFile(). The parent is null for relative names, i.e. the working directory
+        mTempFile = File.createTempFile("." + mBaseFile.getName() + ".", TEMP_EXTENSION,
+                parent == null ? new File(".") : parent);
+        return new FileOutputStream(mTempFile);
+    }
+
+    // Closes the stream and replaces the file with what was written to it
+    public boolean finishWrite(final FileOutputStream out) {
+        try {
+            out.flush();
+            if (mDurable && syncPolicy != SYNC_NONE) {
+                final long start = Metrics.start();
+                out.getFD().sync();
+                FILE_SYNC_TIMER.stop(start);
+            }
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            failWrite(out);
+            return false;
+        }
+
+        if (!mTempFile.renameTo(mBaseFile)) {
+            // Some systems can't rename over an existing file. This isn't atomic,
+            // but it's still better than leaving the temporary file around.
+            if (!mBaseFile.delete() || !mTempFile.renameTo(mBaseFile)) {
+                System.err.println("AtomicFile: Could not rename " + mTempFile + " to " + mBaseFile);
+                mTempFile.delete();
+                return false;
+            }
+        }
+
+        if (mDurable && syncPolicy == SYNC_FILE_AND_DIRECTORY) {
+            final File directory = mBaseFile.getAbsoluteFile().getParentFile();
+            synchronized (batchLock) {
+                if (openBatches > 0) {
+                    unsyncedDirectories.add(directory);
+                    return true;
+                }
+            }
+            syncDirectory(directory);
+        }
+        return true;
+    }
+
+    // Closes the stream and leaves the file as it was
+    public void failWrite(final FileOutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        if (mTempFile.isFile() && !mTempFile.delete())
+            System.err.println("AtomicFile: Could not delete " + mTempFile);
+    }
+
+    // Uses the default charset, the same FileUtils.readTextFile reads with
+    public static boolean write(final File file, final String content) {
+        return write(file, content.getBytes());
+    }
+
+    public static boolean write(final File file, final byte[] data) {
+        final AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            out.write(data);
+            return atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (out != null)
+                atomicFile.failWrite(out);
+            return false;
+        }
+    }
+
+    //endregion
+
+    //region Syncing directories
+
+    private static void syncDirectory(final File directory) {
+        final long start = Metrics.start();
+        try {
+            DirectorySync.sync(directory);
+            DIRECTORY_SYNC_TIMER.stop(start);
+        } catch (IOException | LinkageError e) {
+            // Not every system can open directories (and older Android versions lack
+            // java.nio.file), there's nothing else to do but trusting the rename
+        }
+    }
+
+    // Kept apart so that nothing else fails to load where java.nio.file is missing
+    private static class DirectorySync {
+        static void sync(final File directory) throws IOException {
+            final FileChannel channel = FileChannel.open(
+                    directory.toPath(), java.nio.file.StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,303 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Small HTTP client on top of HttpURLConnection, meant to be shared.
+//
+// Connections are kept alive and reused: bodies are always read until the end and closed,
+// never disconnect()ed. Responses are requested gzipped and decoded as they're read (in
+// chunks, not line by line), and request bodies are streamed with their fixed length.
+//
+// Requests which fail because of the network, a server error (5xx) or a secondary rate limit
+// (403/429 asking to retry later) are retried a few times, waiting exponentially longer with
+// some jitter (or as long as the server says). Only idempotent methods are retried on errors,
+// since the server may have processed a POST even if it failed, but rate limited requests
+// were refused, so those are always retried.
+@SuppressWarnings({"WeakerAccess", "unused", "SameParameterValue"})
+public class HttpClient {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Set<String> IDEMPOTENT_METHODS =
+            new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+    private static final Pattern CHARSET_PATTERN =
+            Pattern.compile("charset\\s*=\\s*\"?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private static HttpClient defaultClient;
+
+    private int mConnectTimeout = 15 * 1000;
+    private int mReadTimeout = 30 * 1000;
+    private int mMaxRetries = 3;
+    private long mBackoffBase = 500;
+    private long mBackoffMax = 30 * 1000;
+    private final Map<String, String> mHeaders = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+    private final Random mRandom = new Random();
+
+    public static class Response {
+        public final int code;
+        public final String body;
+        private final Map<String, List<String>> mHeaders;
+
+        Response(final int code, final String body, final Map<String, List<String>> headers) {
+            this.code = code;
+            this.body = body;
+            mHeaders = headers;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        // Header names are case insensitive, returns null if it's not present
+        public String getHeader(final String name) {
+            if (mHeaders != null) {
+                for (Map.Entry<String, List<String>> entry : mHeaders.entrySet()) {
+                    if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty())
+                        return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+
+    // The client shared by every call (e.g. to GitHub), which can be configured as a whole
+    public static synchronized HttpClient getDefault() {
+        if (defaultClient == null)
+            defaultClient = new HttpClient();
+        return defaultClient;
+    }
+
+    //region Configuration
+
+    public HttpClient setConnectTimeout(final int millis) {
+        mConnectTimeout = millis;
+        return this;
+    }
+
+    public HttpClient setReadTimeout(final int millis) {
+        mReadTimeout = millis;
+        return this;
+    }
+
+    // How many times a failed request is retried (so at most 1 + maxRetries requests are made)
+    public HttpClient setMaxRetries(final int maxRetries) {
+        mMaxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    // The n-th retry waits around base * 2^n, but never more than max
+    public HttpClient setBackoff(final long baseMillis, final long maxMillis) {
+        mBackoffBase = baseMillis;
+        mBackoffMax = maxMillis;
+        return this;
+    }
+
+    // Header sent along every request, or removed if value is null
+    public HttpClient setHeader(final String name, final String value) {
+        if (value == null)
+            mHeaders.remove(name);
+        else
+            mHeaders.put(name, value);
+        return this;
+    }
+
+    //endregion
+
+    //region Requests
+
+    public Response request(final String method, final URL url) throws IOException {
+        return request(method, url, null, null);
+    }
+
+    public Response request(final String method, final URL url,
+                            final byte[] body, final String contentType) throws IOException {
+        return request(method, url, body, contentType, null);
+    }
+
+    // Performs the request, retrying if needed. Throws if the network keeps failing,
+    // otherwise the last response is returned, whatever its status code was.
+    // The headers (which may be null) are sent only along this request.
+    public Response request(final String method, final URL url, final byte[] body,
+                            final String contentType, final Map<String, String> headers) throws IOException {
+        final boolean idempotent = IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH));
+        for (int attempt = 0; ; ++attempt) {
+            final Response response;
+            try {
+                response = requestOnce(method, url, body, contentType, headers);
+            } catch (IOException e) {
+                if (!idempotent || attempt >= mMaxRetries)
+                    throw e;
+
+                backoff(attempt, -1);
+                continue;
+            }
+
+            if (attempt < mMaxRetries) {
+                if (isRateLimited(response)) {
+                    backoff(attempt, getRetryAfterMillis(response));
+                    continue;
+                }
+                if (idempotent && response.code >= 500) {
+                    backoff(attempt, getRetryAfterMillis(response));
+                    continue;
+                }
+            }
+            return response;
+        }
+    }
+
+    private Response requestOnce(final String method, final URL url, final byte[] body,
+                                 final String contentType, final Map<String, String> headers) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        InputStream input = null;
+        try {
+            connection.setConnectTimeout(mConnectTimeout);
+            connection.setReadTimeout(mReadTimeout);
+            connection.setRequestMethod(method);
+            connection.setDoInput(true);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            synchronized (mHeaders) {
+                for (Map.Entry<String, String> header : mHeaders.entrySet())
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet())
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (body != null && body.length > 0) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                if (contentType != null)
+                    connection.setRequestProperty("Content-Type", contentType);
+
+                final OutputStream output = connection.getOutputStream();
+                try {
+                    output.write(body);
+                } finally {
+                    output.close();
+                }
+            }
+
+            final int code = connection.getResponseCode();
+            input = code < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+
+            String text = "";
+            if (input != null) {
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+                    input = new GZIPInputStream(input, BUFFER_SIZE);
+                text = readFully(input, getCharset(connection.getContentType()));
+            }
+            return new Response(code, text, connection.getHeaderFields());
+        } catch (IOException e) {
+            // Whatever state the connection was left in, it shouldn't be reused
+            connection.disconnect();
+            throw e;
+        } finally {
+            // Closing the (fully read) stream, and not disconnecting, lets the connection be reused
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Utilities
+
+    // GitHub answers 403 or 429 if too many requests are made in a short time, telling how
+    // long to wait. Primary rate limits (which reset in up to an hour) are not retried.
+    private static boolean isRateLimited(final Response response) {
+        if (response.code == 429)
+            return true;
+
+        if (response.code != HttpURLConnection.HTTP_FORBIDDEN)
+            return false;
+
+        return response.getHeader("Retry-After") != null ||
+                response.body.toLowerCase(Locale.ENGLISH).contains("secondary rate limit");
+    }
+
+    // Returns -1 if the server didn't say how long to wait
+    private static long getRetryAfterMillis(final Response response) {
+        final String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000L;
+            } catch (NumberFormatException ignored) {
+                // Could be a date, rare enough to just use the usual backoff
+            }
+        }
+        return -1;
+    }
+
+    private void backoff(final int attempt, final long retryAfterMillis) throws IOException {
+        long delay;
+        if (retryAfterMillis >= 0) {
+            delay = Math.min(retryAfterMillis, mBackoffMax);
+        } else {
+            // Half of the exponential delay is always waited, the other half is random
+            // so that many clients failing at once don't all retry at the same time
+            final long exponential = Math.min(mBackoffMax, mBackoffBase << Math.min(attempt, 20));
+            final long half = exponential / 2;
+            synchronized (mRandom) {
+                delay = half + (half > 0 ? (long) (mRandom.nextDouble() * half) : 0);
+            }
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry the request");
+        }
+    }
+
+    private static Charset getCharset(final String contentType) {
+        if (contentType != null) {
+            final Matcher m = CHARSET_PATTERN.matcher(contentType);
+            if (m.find()) {
+                try {
+                    return Charset.forName(m.group(1));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+        return UTF8;
+    }
+
+    private static String readFully(final InputStream input, final Charset charset) throws IOException {
+        final Reader reader = new InputStreamReader(input, charset);
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1)
+            sb.append(buffer, 0, read);
+        return sb.toString();
+    }
+
+    //endregion
+}
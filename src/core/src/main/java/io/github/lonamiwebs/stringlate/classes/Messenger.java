@@ -12,6 +12,12 @@ public class Messenger {
     // This interface is not meant to be used by the Messenger itself but rather
     // wrappers around background threads and handlers to talk to the Messenger.
     public interface OnSyncProgress {
+        // Stages when synchronizing a repository. These overlap, and each has its own progress
+        int STAGE_CLONE = 1; // Cloning (or updating) the repository
+        int STAGE_PARSE = 2; // Parsing the resources as soon as they're written
+        int STAGE_MERGE = 3; // Merging them with the local resources
+        int STAGE_WRITE = 4; // Writing the default resources and the merged ones
+
         void onUpdate(int stage, float progress);
     }
 
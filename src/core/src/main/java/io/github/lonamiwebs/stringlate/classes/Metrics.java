@@ -0,0 +1,230 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Static registry of counters, histograms and timers to find out where the time goes
+// (e.g. when synchronizing or exporting a repository). Metrics are looked up by name
+// once and kept on static fields, and recording values on them doesn't allocate, so
+// they can be used on hot paths:
+//
+//     private static final Metrics.Timer PARSE_TIMER = Metrics.timer("parse");
+//     …
+//     final long start = Metrics.start();
+//     …
+//     PARSE_TIMER.stop(start);
+//
+// Everything recorded can be dumped as JSON, for the command line or the debug screen.
+public class Metrics {
+
+    //region Metric types
+
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(final long amount) {
+            mValue.addAndGet(amount);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+        }
+
+        Object toJson() {
+            return mValue.get();
+        }
+    }
+
+    // Records non-negative values on power of two buckets (the bucket i holds values
+    // up to 2^i - 1), so percentiles are approximate but recording is just a few adds
+    public static class Histogram {
+        private static final int BUCKETS = 65;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+
+            mBuckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value))
+                max = mMax.get();
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getSum() {
+            return mSum.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        // Upper bound for the given percentile (0-100), never greater than the maximum
+        public long getPercentile(final double percentile) {
+            final long count = mCount.get();
+            if (count == 0)
+                return 0;
+
+            final long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += mBuckets.get(i);
+                if (seen >= rank)
+                    return i == 0 ? 0 : Math.min(mMax.get(), i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+            return mMax.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; ++i)
+                mBuckets.set(i, 0);
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        Object toJson() throws JSONException {
+            final long count = getCount();
+            return new JSONObject()
+                    .put("count", count)
+                    .put("sum", getSum())
+                    .put("mean", count == 0 ? 0 : getSum() / count)
+                    .put("max", getMax())
+                    .put("p50", getPercentile(50))
+                    .put("p90", getPercentile(90))
+                    .put("p99", getPercentile(99));
+        }
+    }
+
+    // Histogram of durations in nanoseconds, shown in milliseconds
+    public static class Timer extends Histogram {
+        // Records the time elapsed since start (as returned by Metrics.start()) and returns it
+        public long stop(final long start) {
+            final long elapsed = System.nanoTime() - start;
+            record(elapsed);
+            return elapsed;
+        }
+
+        @Override
+        Object toJson() throws JSONException {
+            final long count = getCount();
+            return new JSONObject()
+                    .put("count", count)
+                    .put("total_ms", toMillis(getSum()))
+                    .put("mean_ms", count == 0 ? 0 : toMillis(getSum() / count))
+                    .put("max_ms", toMillis(getMax()))
+                    .put("p50_ms", toMillis(getPercentile(50)))
+                    .put("p90_ms", toMillis(getPercentile(90)))
+                    .put("p99_ms", toMillis(getPercentile(99)));
+        }
+
+        private static double toMillis(final long nanos) {
+            return Math.round(nanos / 1000.0) / 1000.0;
+        }
+    }
+
+    //endregion
+
+    //region Registry
+
+    private final static ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public static Counter counter(final String name) {
+        Counter result = counters.get(name);
+        if (result == null) {
+            counters.putIfAbsent(name, new Counter());
+            result = counters.get(name);
+        }
+        return result;
+    }
+
+    public static Histogram histogram(final String name) {
+        Histogram result = histograms.get(name);
+        if (result == null) {
+            histograms.putIfAbsent(name, new Histogram());
+            result = histograms.get(name);
+        }
+        return result;
+    }
+
+    public static Timer timer(final String name) {
+        Timer result = timers.get(name);
+        if (result == null) {
+            timers.putIfAbsent(name, new Timer());
+            result = timers.get(name);
+        }
+        return result;
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    // Sets every metric back to zero (they're still registered)
+    public static void reset() {
+        for (Counter counter : counters.values())
+            counter.reset();
+        for (Histogram histogram : histograms.values())
+            histogram.reset();
+        for (Timer timer : timers.values())
+            timer.reset();
+    }
+
+    // {"counters": {name: value}, "histograms": {name: {…}}, "timers": {name: {…}}},
+    // only with the metrics which recorded something, and sorted by name
+    public static JSONObject toJson() {
+        final JSONObject result = new JSONObject();
+        try {
+            final JSONObject counterValues = new JSONObject();
+            for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet())
+                if (entry.getValue().get() != 0)
+                    counterValues.put(entry.getKey(), entry.getValue().toJson());
+
+            final JSONObject histogramValues = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet())
+                if (entry.getValue().getCount() != 0)
+                    histogramValues.put(entry.getKey(), entry.getValue().toJson());
+
+            final JSONObject timerValues = new JSONObject();
+            for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet())
+                if (entry.getValue().getCount() != 0)
+                    timerValues.put(entry.getKey(), entry.getValue().toJson());
+
+            result.put("counters", counterValues)
+                    .put("histograms", histogramValues)
+                    .put("timers", timerValues);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    //endregion
+}
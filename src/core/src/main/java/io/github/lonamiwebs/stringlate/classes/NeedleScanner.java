@@ -0,0 +1,157 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
+
+// Looks for several needles at once on the raw bytes of files, ignoring the case of
+// ASCII letters. The needles are compiled once into an Aho-Corasick automaton, so
+// every byte is only looked at once no matter how many needles there are, and the
+// files are read into a reusable direct buffer (one per thread) without decoding.
+// Scanning is done on a heap copy of each chunk, much faster than byte-by-byte get()s.
+//
+// Instances are immutable and can be shared among threads.
+public class NeedleScanner {
+
+    //region Members
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int[][] mNext; // State transitions for every byte, already case folded
+    private final int[] mMatch; // Needle index found on reaching each state, or -1
+
+    private final ThreadLocal<Buffers> mBuffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private static class Buffers {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final byte[] chunk = new byte[BUFFER_SIZE];
+    }
+
+    //endregion
+
+    //region Constructor
+
+    public NeedleScanner(final String... needles) {
+        // Build the trie with the needles, lower-cased just like the input will be
+        final ArrayList<int[]> next = new ArrayList<>();
+        final ArrayList<Integer> match = new ArrayList<>();
+        next.add(newState());
+        match.add(-1);
+
+        for (int i = 0; i < needles.length; i++) {
+            int state = 0;
+            for (byte b : needles[i].toLowerCase(Locale.ROOT).getBytes(UTF8)) {
+                final int c = b & 0xFF;
+                if (next.get(state)[c] == -1) {
+                    next.get(state)[c] = next.size();
+                    next.add(newState());
+                    match.add(-1);
+                }
+                state = next.get(state)[c];
+            }
+            if (match.get(state) == -1)
+                match.set(state, i);
+        }
+
+        mNext = next.toArray(new int[next.size()][]);
+        mMatch = new int[match.size()];
+        for (int i = 0; i < mMatch.length; i++)
+            mMatch[i] = match.get(i);
+
+        // Turn the trie into an automaton following the failure links (breadth first),
+        // so that scanning never needs to go back, and propagate the matches through them
+        final int[] fail = new int[mNext.length];
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 256; c++) {
+            if (mNext[0][c] == -1) {
+                mNext[0][c] = 0;
+            } else {
+                fail[mNext[0][c]] = 0;
+                queue.add(mNext[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            final int failMatch = mMatch[fail[state]];
+            if (failMatch != -1 && (mMatch[state] == -1 || failMatch < mMatch[state]))
+                mMatch[state] = failMatch;
+
+            for (int c = 0; c < 256; c++) {
+                final int to = mNext[state][c];
+                if (to == -1) {
+                    mNext[state][c] = mNext[fail[state]][c];
+                } else {
+                    fail[to] = mNext[fail[state]][c];
+                    queue.add(to);
+                }
+            }
+        }
+
+        // Upper case ASCII letters behave just like their lower case counterparts
+        for (int[] transitions : mNext)
+            for (int c = 'A'; c <= 'Z'; c++)
+                transitions[c] = transitions[c + ('a' - 'A')];
+    }
+
+    private static int[] newState() {
+        final int[] result = new int[256];
+        for (int i = 0; i < result.length; i++)
+            result[i] = -1;
+        return result;
+    }
+
+    //endregion
+
+    //region Scanning
+
+    // Returns the index of the first needle found on the file, or -1 if none is
+    // found (or the file can't be read). Reading stops as soon as one is found.
+    public int indexIn(final File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final FileChannel channel = in.getChannel();
+            final Buffers buffers = mBuffers.get();
+            final ByteBuffer buffer = buffers.direct;
+            final byte[] chunk = buffers.chunk;
+
+            int state = 0;
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                final int length = buffer.remaining();
+                buffer.get(chunk, 0, length);
+                for (int i = 0; i < length; i++) {
+                    state = mNext[state][chunk[i] & 0xFF];
+                    if (mMatch[state] != -1)
+                        return mMatch[state];
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return -1;
+    }
+
+    //endregion
+}
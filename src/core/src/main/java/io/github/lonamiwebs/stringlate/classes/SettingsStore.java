@@ -0,0 +1,214 @@
+package io.github.lonamiwebs.stringlate.classes;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a JSON settings file in memory and writes it behind. Changing a setting only marks
+// the store as dirty, and it's written once, a short while after the first change, so many
+// changes in a row (e.g. one per file while synchronizing) cost a single write. The JSON is
+// written through an AtomicFile, so the file is never left half written.
+//
+// flush() writes the pending changes right away (e.g. when leaving a screen or after a sync)
+// and flushAll() does so for every store (e.g. before exiting, since the writer is a daemon).
+//
+// There's a single store per file (see forFile()), so that every screen working on the same
+// repository sees the same settings, rather than writing its older copy over the others'.
+public class SettingsStore {
+
+    //region Members
+
+    private static final long WRITE_DELAY_MS = 500;
+
+    private static final Metrics.Counter WRITES = Metrics.counter("settings.writes");
+    private static final Metrics.Counter COALESCED = Metrics.counter("settings.coalesced");
+
+    private static ScheduledExecutorService writer;
+    private static final HashMap<String, SettingsStore> stores = new HashMap<>(); // By canonical path
+    private static final Set<SettingsStore> pendingStores =
+            Collections.newSetFromMap(new ConcurrentHashMap<SettingsStore, Boolean>());
+
+    private final File mFile;
+    private final Object mWriteLock = new Object(); // So that older JSON is never written last
+    private volatile JSONObject mJson;
+
+    private boolean mDirty;
+    private boolean mScheduled;
+    private boolean mDiscarded;
+
+    //endregion
+
+    //region Constructor
+
+    private SettingsStore(final File file) {
+        mFile = file;
+        mJson = load();
+    }
+
+    // Returns the store of the given file, loading it only if there's none yet. Discarded
+    // stores are replaced by a new one, since their file may have been made again since then
+    public static SettingsStore forFile(final File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+
+        synchronized (stores) {
+            SettingsStore store = stores.get(path);
+            if (store == null || store.isDiscarded()) {
+                store = new SettingsStore(file);
+                stores.put(path, store);
+            }
+            return store;
+        }
+    }
+
+    //endregion
+
+    //region Getting and changing settings
+
+    // The settings as they are now. This must only be read, changes must go
+    // through put() and remove() so that they're saved (and not while writing).
+    public JSONObject get() {
+        return mJson;
+    }
+
+    public void put(final String name, final Object value) {
+        synchronized (this) {
+            try {
+                mJson.put(name, value);
+            } catch (JSONException ignored) {
+            }
+        }
+        markDirty();
+    }
+
+    public void remove(final String name) {
+        synchronized (this) {
+            mJson.remove(name);
+        }
+        markDirty();
+    }
+
+    public void reset() {
+        synchronized (this) {
+            mJson = new JSONObject();
+        }
+        markDirty();
+    }
+
+    //endregion
+
+    //region Loading and saving
+
+    private JSONObject load() {
+        try {
+            final String json = FileUtils.readTextFile(mFile);
+            if (!json.isEmpty())
+                return new JSONObject(json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return new JSONObject();
+    }
+
+    private synchronized void markDirty() {
+        if (mDiscarded)
+            return;
+
+        mDirty = true;
+        if (mScheduled) {
+            COALESCED.increment();
+            return;
+        }
+
+        mScheduled = true;
+        pendingStores.add(this);
+        getWriter().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Writes the pending changes now, if any. Returns false only if writing failed.
+    public boolean flush() {
+        synchronized (mWriteLock) {
+            final String json;
+            synchronized (this) {
+                mScheduled = false;
+                pendingStores.remove(this);
+                if (!mDirty)
+                    return true;
+
+                mDirty = false;
+                json = mJson.toString();
+            }
+
+            if (AtomicFile.write(mFile, json)) {
+                WRITES.increment();
+                return true;
+            }
+
+            System.err.println("SettingsStore: Could not write " + mFile);
+            synchronized (this) {
+                // Try again on the next flush (unless it was discarded meanwhile)
+                mDirty = !mDiscarded;
+            }
+            return false;
+        }
+    }
+
+    // Drops the pending changes and ignores any later ones, e.g. when the
+    // directory of the file is being deleted (writing would bring it back).
+    // Anyone asking for the file's store after this gets a new one instead
+    public void discard() {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mDiscarded = true;
+                mDirty = false;
+                pendingStores.remove(this);
+            }
+        }
+    }
+
+    private synchronized boolean isDiscarded() {
+        return mDiscarded;
+    }
+
+    public static void flushAll() {
+        for (SettingsStore store : pendingStores.toArray(new SettingsStore[0]))
+            store.flush();
+    }
+
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "SettingsStore");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return writer;
+    }
+
+    //endregion
+}
@@ -0,0 +1,109 @@
+package io.github.lonamiwebs.stringlate.classes.git;
+
+import net.gsantner.opoc.util.NetworkUtils;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.lonamiwebs.stringlate.classes.HttpClient;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
+
+// Waits until a repository which was just forked on GitHub can be used. "Forking a Repository
+// happens asynchronously", and until it's done the fork has no commits to list.
+//
+// The commits are asked for every now and then, waiting longer each time up to a maximum,
+// and giving up after a deadline. Requests are conditional (If-None-Match), so that those
+// answered with "304 Not Modified" are cheap and don't count against the rate limit.
+// Waiting can be cancelled from any thread.
+public class ForkPoller {
+
+    //region Members
+
+    private static final Metrics.Timer WAIT_TIMER = Metrics.timer("github.fork.wait");
+
+    private long mInitialInterval = 500;
+    private long mMaxInterval = 2 * 1000;
+    private long mDeadline = 2 * 60 * 1000;
+
+    private final CountDownLatch mCancelled = new CountDownLatch(1);
+
+    //endregion
+
+    //region Configuration
+
+    // The first check is done right away, then after initialMillis, growing up to maxMillis
+    public ForkPoller setInterval(final long initialMillis, final long maxMillis) {
+        mInitialInterval = initialMillis;
+        mMaxInterval = maxMillis;
+        return this;
+    }
+
+    // How long to wait at most for the fork to be ready before giving up
+    public ForkPoller setDeadline(final long millis) {
+        mDeadline = millis;
+        return this;
+    }
+
+    //endregion
+
+    //region Waiting
+
+    // Returns true once the fork (e.g. "user/repository") is ready, or
+    // false if the deadline passed or the poller was cancelled before
+    public boolean await(final String token, final String ownerRepo) {
+        final String url = GitHub.getUrl("repos/%s/commits?per_page=1&access_token=%s", ownerRepo, token);
+
+        final long start = Metrics.start();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(mDeadline);
+        final HashMap<String, String> headers = new HashMap<>();
+        long interval = mInitialInterval;
+        try {
+            while (!isCancelled()) {
+                if (isReady(url, headers)) {
+                    WAIT_TIMER.stop(start);
+                    return true;
+                }
+
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0)
+                    break;
+
+                if (mCancelled.await(Math.min(interval, remaining), TimeUnit.MILLISECONDS))
+                    break;
+
+                interval = Math.min(mMaxInterval, interval * 2);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    // Remembers the ETag of the last response on the headers, to ask for changes only
+    private static boolean isReady(final String url, final HashMap<String, String> headers) {
+        final HttpClient.Response response = GitHub.request(url, NetworkUtils.GET, null, null, headers);
+        if (response == null)
+            return false; // Maybe a hiccup, next time will tell
+
+        if (response.code == 304)
+            return false; // Still the same "409 Git Repository is empty" (or "404 Not Found")
+
+        final String etag = response.getHeader("ETag");
+        if (etag != null)
+            headers.put("If-None-Match", etag);
+
+        return response.isSuccessful();
+    }
+
+    public void cancel() {
+        mCancelled.countDown();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled.getCount() == 0;
+    }
+
+    //endregion
+}
@@ -3,6 +3,8 @@ package io.github.lonamiwebs.stringlate.classes.git;
 
 import org.eclipse.jgit.lib.ProgressMonitor;
 
+import java.io.File;
+
 import io.github.lonamiwebs.stringlate.classes.Messenger;
 
 public class GitCloneProgressCallback implements ProgressMonitor {
@@ -44,7 +46,7 @@ public class GitCloneProgressCallback implements ProgressMonitor {
         long time = System.currentTimeMillis();
         if (time - mLastMs >= DELAY_PER_UPDATE) {
             mLastMs = time;
-            mCallback.onUpdate(1, (float) mDone / (float) mWork);
+            mCallback.onUpdate(Messenger.OnSyncProgress.STAGE_CLONE, (float) mDone / (float) mWork);
         }
     }
 
@@ -61,6 +63,11 @@ public class GitCloneProgressCallback implements ProgressMonitor {
         return mCancelled;
     }
 
+    // Called right after a file is written when checking out the repository,
+    // so that it can be used before the whole working tree has been written
+    public void onCheckedOut(final File file) {
+    }
+
     public void cancel() {
         mCancelled = true;
     }
@@ -7,13 +7,29 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.InvalidObjectException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
+import io.github.lonamiwebs.stringlate.classes.HttpClient;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
 import io.github.lonamiwebs.stringlate.classes.repos.RepoHandler;
 import io.github.lonamiwebs.stringlate.interfaces.SlAppSettings;
 
@@ -28,15 +44,239 @@ public class GitHub {
     public final static String[] GITHUB_WANTED_SCOPES = {"public_repo", "gist"};
     private static final String GITHUB_REPO_URL_TEMPLATE = "https://github.com/%s/%s";
 
+    // How many files are uploaded at once when committing (more may hit the abuse limits)
+    private static final int MAX_CONCURRENT_UPLOADS = 4;
+
+    // How many responses are cached, and for how long they're used without asking again
+    private static final int CACHE_SIZE = 64;
+    private static final long CACHE_FRESH_MILLIS = 60 * 1000;
+
+    // Calls are never delayed more than this when running low on rate limit
+    private static final long MAX_PACE_MILLIS = 2 * 1000;
+
+    private static final String TOKEN_PARAMETER = "access_token=";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=utf-8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Metrics.Timer CALL_TIMER = Metrics.timer("github.call");
+    private static final Metrics.Counter CALL_FAILURES = Metrics.counter("github.call.failures");
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("github.cache.hits");
+    private static final Metrics.Counter CACHE_REVALIDATED = Metrics.counter("github.cache.revalidated");
+
     //region Private methods
 
-    private static String getUrl(final String call, final Object... args) {
+    static String getUrl(final String call, final Object... args) {
         if (args.length > 0)
             return GITHUB_API_URL + String.format(call, args);
         else
             return GITHUB_API_URL + call;
     }
 
+    // Every call to GitHub goes through these, so that they're all timed and paced
+    private static String performCall(final String url, final String method) {
+        return bodyOf(request(url, method, null, null, null));
+    }
+
+    private static String performCall(final String url, final JSONObject json) {
+        return performCall(url, NetworkUtils.POST, json);
+    }
+
+    private static String performCall(final String url, final String method, final JSONObject json) {
+        return bodyOf(request(url, method, json.toString().getBytes(UTF8), JSON_CONTENT_TYPE, null));
+    }
+
+    // The parameters are sent URL encoded, as a form
+    private static String performCall(final String url, final String method,
+                                      final HashMap<String, String> params) {
+        final StringBuilder form = new StringBuilder();
+        try {
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (form.length() != 0)
+                    form.append('&');
+                form.append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=')
+                        .append(URLEncoder.encode(param.getValue(), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+            return "";
+        }
+        return bodyOf(request(url, method, form.toString().getBytes(UTF8), FORM_CONTENT_TYPE, null));
+    }
+
+    // Returns null if the call couldn't be made at all
+    static HttpClient.Response request(final String url, final String method, final byte[] body,
+                                       final String contentType, final Map<String, String> headers) {
+        final RateLimit rateLimit = getRateLimit(url);
+        rateLimit.pace();
+
+        final long start = Metrics.start();
+        HttpClient.Response response = null;
+        try {
+            response = HttpClient.getDefault().request(method, new URL(url), body, contentType, headers);
+            rateLimit.update(response);
+        } catch (IOException e) {
+            e.printStackTrace();
+            CALL_FAILURES.increment();
+        }
+        CALL_TIMER.stop(start);
+        return response;
+    }
+
+    private static String bodyOf(final HttpClient.Response response) {
+        return response == null ? "" : response.body;
+    }
+
+    //endregion
+
+    //region Caching
+
+    // Responses which rarely change (branches, users, etc.) but are asked for every time
+    // a screen is opened are remembered, along with their ETag and Last-Modified.
+    // For a while they're assumed to be fresh, and then they're revalidated with a
+    // conditional request, which is answered with "304 Not Modified" if they didn't
+    // change (and then doesn't count against the rate limit).
+    private static class CachedResponse {
+        final String body, etag, lastModified;
+        volatile long validatedAt;
+
+        CachedResponse(final String body, final String etag, final String lastModified, final long validatedAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+        }
+    }
+
+    // The URL includes the token (if any), so different users never share responses
+    private static final Map<String, CachedResponse> cache =
+            new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CachedResponse> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private static String performCachedCall(final String url) {
+        final CachedResponse cached;
+        synchronized (cache) {
+            cached = cache.get(url);
+        }
+
+        final long now = System.currentTimeMillis();
+        if (cached != null && (now - cached.validatedAt < CACHE_FRESH_MILLIS || getRateLimit(url).isExhausted())) {
+            CACHE_HITS.increment();
+            return cached.body;
+        }
+
+        final HashMap<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.etag != null)
+                headers.put("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                headers.put("If-Modified-Since", cached.lastModified);
+        }
+
+        final HttpClient.Response response = request(url, NetworkUtils.GET, null, null, headers);
+        if (response == null)
+            return cached == null ? "" : cached.body; // Better something old than nothing
+
+        if (response.code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            CACHE_REVALIDATED.increment();
+            cached.validatedAt = now;
+            return cached.body;
+        }
+
+        if (response.isSuccessful()) {
+            synchronized (cache) {
+                cache.put(url, new CachedResponse(response.body,
+                        response.getHeader("ETag"), response.getHeader("Last-Modified"), now));
+            }
+        }
+        return response.body;
+    }
+
+    // Forgets the cached responses about the repository (e.g. after creating a branch)
+    private static void invalidateCache(final String ownerRepo) {
+        final String prefix = getUrl("repos/%s", ownerRepo);
+        synchronized (cache) {
+            final Iterator<String> it = cache.keySet().iterator();
+            while (it.hasNext()) {
+                final String url = it.next();
+                if (url.startsWith(prefix) && (url.length() == prefix.length() ||
+                        url.charAt(prefix.length()) == '/' || url.charAt(prefix.length()) == '?'))
+                    it.remove();
+            }
+        }
+    }
+
+    //endregion
+
+    //region Rate limits
+
+    // GitHub tells on every response how many calls are left until the limit resets
+    // (X-RateLimit-Remaining and X-RateLimit-Reset). Once few are left, calls are spaced
+    // out so that they last until the reset instead of failing all at once. Every token
+    // (and calls without one) has its own limit.
+    private static class RateLimit {
+        private int mLimit = -1;
+        private int mRemaining = -1;
+        private long mResetMillis;
+
+        synchronized void update(final HttpClient.Response response) {
+            try {
+                final String limit = response.getHeader("X-RateLimit-Limit");
+                final String remaining = response.getHeader("X-RateLimit-Remaining");
+                final String reset = response.getHeader("X-RateLimit-Reset");
+                if (limit != null && remaining != null && reset != null) {
+                    mLimit = Integer.parseInt(limit.trim());
+                    mRemaining = Integer.parseInt(remaining.trim());
+                    mResetMillis = Long.parseLong(reset.trim()) * 1000L;
+                }
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+
+        synchronized boolean isExhausted() {
+            return mRemaining == 0 && System.currentTimeMillis() < mResetMillis;
+        }
+
+        void pace() {
+            final long delay;
+            synchronized (this) {
+                final long untilReset = mResetMillis - System.currentTimeMillis();
+                if (mLimit <= 0 || mRemaining < 0 || mRemaining >= mLimit / 10 || untilReset <= 0)
+                    return;
+
+                delay = Math.min(untilReset / (mRemaining + 1), MAX_PACE_MILLIS);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final ConcurrentHashMap<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+    private static RateLimit getRateLimit(final String url) {
+        final int index = url.indexOf(TOKEN_PARAMETER);
+        String token = "";
+        if (index >= 0) {
+            final int end = url.indexOf('&', index);
+            token = url.substring(index + TOKEN_PARAMETER.length(), end < 0 ? url.length() : end);
+        }
+
+        RateLimit result = rateLimits.get(token);
+        if (result == null) {
+            rateLimits.putIfAbsent(token, new RateLimit());
+            result = rateLimits.get(token);
+        }
+        return result;
+    }
+
     //endregion
 
     //region Public methods
@@ -63,9 +303,9 @@ public class GitHub {
             params.put("files", filesObject);
 
             if (token.isEmpty())
-                return new JSONObject(NetworkUtils.performCall(getUrl("gists"), params));
+                return new JSONObject(performCall(getUrl("gists"), params));
             else
-                return new JSONObject(NetworkUtils.performCall(getUrl("gists?access_token=" + token), params));
+                return new JSONObject(performCall(getUrl("gists?access_token=" + token), params));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -81,7 +321,7 @@ public class GitHub {
             params.put("title", title);
             params.put("body", description);
 
-            return new JSONObject(NetworkUtils.performCall(getUrl("repos/%s/issues?access_token=%s",
+            return new JSONObject(performCall(getUrl("repos/%s/issues?access_token=%s",
                     repo.toOwnerRepo(), token), params));
         } catch (JSONException e) {
             e.printStackTrace();
@@ -95,7 +335,7 @@ public class GitHub {
         try {
             JSONObject params = new JSONObject();
             params.put("body", body);
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            return new JSONObject(performCall(getUrl(
                     "repos/%s/issues/%d/comments?access_token=%s",
                     repo.toOwnerRepo(), issueNumber, token), params));
         } catch (JSONException e) {
@@ -106,8 +346,8 @@ public class GitHub {
 
     private static JSONObject getUserInfo(String token) {
         try {
-            return new JSONObject(NetworkUtils.performCall(getUrl(
-                    "user?access_token=%s", token), NetworkUtils.GET));
+            return new JSONObject(performCachedCall(getUrl(
+                    "user?access_token=%s", token)));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -117,8 +357,8 @@ public class GitHub {
     private static JSONArray getCollaborators(String token, RepoHandler repo)
             throws InvalidObjectException {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/collaborators?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
+            return new JSONArray(performCachedCall(getUrl(
+                    "repos/%s/collaborators?access_token=%s", repo.toOwnerRepo(), token)));
         } catch (JSONException e) {
             // We might not have permission so the response isn't an array, rather an object:
             // {
@@ -162,8 +402,8 @@ public class GitHub {
 
     public static JSONArray getBranches(final RepoHandler repo) {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
-                    "repos/%s/branches", repo.toOwnerRepo()), NetworkUtils.GET));
+            return new JSONArray(performCachedCall(getUrl(
+                    "repos/%s/branches", repo.toOwnerRepo())));
         } catch (JSONException | InvalidObjectException e) {
             e.printStackTrace();
             return null;
@@ -172,8 +412,8 @@ public class GitHub {
 
     public static String getDefaultBranch(final RepoHandler repo) {
         try {
-            JSONObject result = new JSONObject(NetworkUtils.performCall(getUrl(
-                    "repos/%s", repo.toOwnerRepo()), NetworkUtils.GET));
+            JSONObject result = new JSONObject(performCachedCall(getUrl(
+                    "repos/%s", repo.toOwnerRepo())));
             return result.getString("default_branch");
         } catch (JSONException | InvalidObjectException e) {
             e.printStackTrace();
@@ -184,7 +424,7 @@ public class GitHub {
     private static JSONArray getCommits(final String token, final RepoHandler repo)
             throws InvalidObjectException {
         try {
-            return new JSONArray(NetworkUtils.performCall(getUrl(
+            return new JSONArray(performCall(getUrl(
                     "repos/%s/commits?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
         } catch (JSONException e) {
             e.printStackTrace();
@@ -195,16 +435,19 @@ public class GitHub {
     public static JSONObject createBranch(final String token, final RepoHandler repo, final String branchName)
             throws InvalidObjectException {
         try {
-            JSONArray head = new JSONArray(NetworkUtils.performCall(getUrl(
+            JSONArray head = new JSONArray(performCall(getUrl(
                     "repos/%s/git/refs/heads?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.GET));
 
             final String sha = head.getJSONObject(0).getJSONObject("object").getString("sha");
             JSONObject params = new JSONObject();
             params.put("ref", "refs/heads/" + branchName);
             params.put("sha", sha);
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            final JSONObject result = new JSONObject(performCall(getUrl(
                     "repos/%s/git/refs?access_token=%s", repo.toOwnerRepo(), token), params));
 
+            invalidateCache(repo.toOwnerRepo());
+            return result;
+
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -213,25 +456,21 @@ public class GitHub {
 
     public static JSONObject forkRepository(final String token, final RepoHandler repo)
             throws InvalidObjectException {
+        return forkRepository(token, repo, new ForkPoller());
+    }
+
+    // Returns null if the fork failed, or it wasn't ready before the poller gave up (or was cancelled)
+    public static JSONObject forkRepository(final String token, final RepoHandler repo,
+                                            final ForkPoller poller)
+            throws InvalidObjectException {
         try {
-            JSONObject result = new JSONObject(NetworkUtils.performCall(getUrl(
+            JSONObject result = new JSONObject(performCall(getUrl(
                     "repos/%s/forks?access_token=%s", repo.toOwnerRepo(), token), NetworkUtils.POST));
 
             // "Forking a Repository happens asynchronously."
             // One way to know when forking is done is to fetch the list of commits for the fork.
             // (http://stackoverflow.com/a/33667417/4759433)
-            int sleep = 1000;
-            do {
-                try {
-                    Thread.sleep(sleep);
-                    sleep *= 2; // Sleep longer if the repo isn't yet forked not to call so often
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    return null;
-                }
-            } while (getCommits(token, repo) == null);
-
-            return result;
+            return poller.await(token, result.getString("full_name")) ? result : null;
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -252,7 +491,7 @@ public class GitHub {
             if (body != null && !body.isEmpty())
                 params.put("body", body);
 
-            return new JSONObject(NetworkUtils.performCall(getUrl(
+            return new JSONObject(performCall(getUrl(
                     "repos/%s/pulls?access_token=%s", originalRepo.toOwnerRepo(), token), params));
         } catch (JSONException e) {
             e.printStackTrace();
@@ -269,45 +508,66 @@ public class GitHub {
         final String tokenQuery = "?access_token=" + token;
         final String ownerRepo = repo.toOwnerRepo();
 
-        // Step 1. Get a reference to HEAD (GET /repos/:owner/:repo/git/refs/:ref)
-        // https://developer.github.com/v3/git/refs/#get-a-reference
-        JSONObject head = new JSONObject(NetworkUtils.performCall(
-                getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery), NetworkUtils.GET));
-
-        // Step 2. Grab the commit that HEAD points to (GET /repos/:owner/:repo/git/commits/:sha)
-        // https://developer.github.com/v3/git/commits/#get-a-commit
-        String headCommitUrl = head.getJSONObject("object").getString("url");
-        // Equivalent to getting object.sha and then formatting it
-
-        JSONObject commit = new JSONObject(NetworkUtils.performCall(headCommitUrl + tokenQuery, NetworkUtils.GET));
-
-        // Step 3. Post your new file to the server (POST /repos/:owner/:repo/git/blobs)
+        // Step 3 (done first). Post your new files to the server (POST /repos/:owner/:repo/git/blobs)
         // https://developer.github.com/v3/git/blobs/#create-a-blob
-        final HashMap<String, JSONObject> pathBlobs = new HashMap<>();
-
-        for (Map.Entry<String, String> pathContent : pathContents.entrySet()) {
-            JSONObject newBlob = new JSONObject();
-            newBlob.put("content", pathContent.getValue());
-            newBlob.put("encoding", "utf-8");
+        // Blobs don't depend on anything else, so they're uploaded in the background (a few
+        // at once) while the reference and the commit are looked up (steps 1 and 2)
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(pathContents.size(), MAX_CONCURRENT_UPLOADS)));
 
-            JSONObject blob = new JSONObject(NetworkUtils.performCall(
-                    getUrl("repos/%s/git/blobs%s", ownerRepo, tokenQuery), newBlob));
+        final HashMap<String, Future<JSONObject>> pendingBlobs = new HashMap<>();
+        final HashMap<String, JSONObject> pathBlobs = new HashMap<>();
+        final JSONObject commit;
+        try {
+            for (Map.Entry<String, String> pathContent : pathContents.entrySet()) {
+                final JSONObject newBlob = new JSONObject();
+                newBlob.put("content", pathContent.getValue());
+                newBlob.put("encoding", "utf-8");
+
+                pendingBlobs.put(pathContent.getKey(), executor.submit(new Callable<JSONObject>() {
+                    @Override
+                    public JSONObject call() throws JSONException {
+                        return new JSONObject(performCall(
+                                getUrl("repos/%s/git/blobs%s", ownerRepo, tokenQuery), newBlob));
+                    }
+                }));
+            }
 
-            pathBlobs.put(pathContent.getKey(), blob);
+            // Step 1. Get a reference to HEAD (GET /repos/:owner/:repo/git/refs/:ref)
+            // https://developer.github.com/v3/git/refs/#get-a-reference
+            JSONObject head = new JSONObject(performCall(
+                    getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery), NetworkUtils.GET));
+
+            // Step 2. Grab the commit that HEAD points to (GET /repos/:owner/:repo/git/commits/:sha)
+            // https://developer.github.com/v3/git/commits/#get-a-commit
+            String headCommitUrl = head.getJSONObject("object").getString("url");
+            // Equivalent to getting object.sha and then formatting it
+
+            commit = new JSONObject(performCall(headCommitUrl + tokenQuery, NetworkUtils.GET));
+
+            for (Map.Entry<String, Future<JSONObject>> pendingBlob : pendingBlobs.entrySet())
+                pathBlobs.put(pendingBlob.getKey(), pendingBlob.getValue().get());
+        } catch (ExecutionException e) {
+            // Android's JSONException can't wrap a cause until API 27, so keep the message
+            if (e.getCause() instanceof JSONException)
+                throw (JSONException) e.getCause();
+            throw new JSONException("Could not upload a file: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSONException("Interrupted while uploading the files");
+        } finally {
+            // If anything failed, there's no point in uploading the rest
+            executor.shutdownNow();
         }
 
-        // Step 4. Get a hold of the tree that the commit points to (GET /repos/:owner/:repo/git/trees/:sha)
-        // https://developer.github.com/v3/git/trees/#get-a-tree
-        String treeUrl = commit.getJSONObject("tree").getString("url");
-        // Equivalent to getting tree.sha and then formatting it
-
-        JSONObject baseTree = new JSONObject(NetworkUtils.performCall(treeUrl + tokenQuery, NetworkUtils.GET));
+        // Step 4. The commit already tells the SHA of its tree, so there's no need to
+        // get a hold of the tree itself (GET /repos/:owner/:repo/git/trees/:sha)
 
         // Step 5. Create a tree containing your new file
         //      5a. The easy way (POST /repos/:owner/:repo/git/trees)
         // https://developer.github.com/v3/git/trees/#create-a-tree
         JSONObject newTree = new JSONObject();
-        newTree.put("base_tree", baseTree.get("sha"));
+        newTree.put("base_tree", commit.getJSONObject("tree").getString("sha"));
         {
             JSONArray blobFileArray = new JSONArray();
             for (Map.Entry<String, JSONObject> pathBlob : pathBlobs.entrySet()) {
@@ -324,7 +584,7 @@ public class GitHub {
             newTree.put("tree", blobFileArray);
         }
 
-        JSONObject createdTree = new JSONObject(NetworkUtils.performCall(
+        JSONObject createdTree = new JSONObject(performCall(
                 getUrl("repos/%s/git/trees%s", ownerRepo, tokenQuery), newTree));
 
         // Step 6. Create a new commit (POST /repos/:owner/:repo/git/commits)
@@ -340,7 +600,7 @@ public class GitHub {
         // and the SHA of your newly-created tree from step #5 in the tree field.
         newCommit.put("tree", createdTree.getString("sha"));
 
-        JSONObject repliedNewCommit = new JSONObject(NetworkUtils.performCall(
+        JSONObject repliedNewCommit = new JSONObject(performCall(
                 getUrl("repos/%s/git/commits%s", ownerRepo, tokenQuery), newCommit));
 
         // Step 7. Update HEAD (PATCH /repos/:owner/:repo/git/refs/:ref)
@@ -348,9 +608,12 @@ public class GitHub {
         JSONObject patch = new JSONObject();
         patch.put("sha", repliedNewCommit.getString("sha"));
 
-        return new JSONObject(NetworkUtils.performCall(
+        final JSONObject result = new JSONObject(performCall(
                 getUrl("repos/%s/git/refs/heads/%s%s", ownerRepo, branch, tokenQuery),
                 NetworkUtils.PATCH, patch));
+
+        invalidateCache(ownerRepo);
+        return result;
     }
 
     public static String buildGitHubUrl(String owner, String repository) {
@@ -388,7 +651,7 @@ public class GitHub {
 
             CompleteAuthenticationResult ret = new CompleteAuthenticationResult();
             HashMap<String, String> postResult = NetworkUtils.getDataMap(
-                    NetworkUtils.performCall(GITHUB_COMPLETE_AUTH_URL, NetworkUtils.POST, map)
+                    performCall(GITHUB_COMPLETE_AUTH_URL, NetworkUtils.POST, map)
             );
             if (postResult.containsKey("error")) {
                 ret.message = postResult.get("error_description");
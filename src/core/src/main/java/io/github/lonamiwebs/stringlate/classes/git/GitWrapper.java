@@ -1,22 +1,41 @@
 package io.github.lonamiwebs.stringlate.classes.git;
 
-import net.gsantner.opoc.util.FileUtils;
-
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.github.lonamiwebs.stringlate.classes.NeedleScanner;
 import io.github.lonamiwebs.stringlate.classes.resources.DisplayMetrics;
 
 public class GitWrapper {
@@ -30,12 +49,21 @@ public class GitWrapper {
     private static final Pattern PATTERN_README =
             Pattern.compile("(?:read|le[ea])[-_.]?me(?:\\.(?:md|rst|txt))?", Pattern.CASE_INSENSITIVE);
 
-    private static final String STR_STRING = "<string";
-    private static final String STR_PLURALS = "<plurals";
+    // Resources under "values*/", and the icons under "mipmap*/" or "drawable*/" (or the web one)
+    private static final Pattern PATTERN_SPARSE_PATH = Pattern.compile(
+            "(?:^|/)(?:values(?:-[\\w-]+)?/[^/]+\\.xml" +
+                    "|(?:mipmap|drawable)[^/]*/[^/]+\\.png" +
+                    "|ic_launcher-web\\.png)$", Pattern.CASE_INSENSITIVE);
+
     private static final String[] STR_TRANSLATION_SERVICES = {
             "transifex", "crowdin", "weblate", "zanata", "pootle", "onesky", "poeditor"
     };
 
+    // Built once, these are shared by every search (and every thread)
+    private static final NeedleScanner STRINGS_SCANNER = new NeedleScanner("<string", "<plurals");
+    private static final NeedleScanner TRANSLATION_SERVICES_SCANNER =
+            new NeedleScanner(STR_TRANSLATION_SERVICES);
+
     // GitHub URLs (and GitLab) are well-known
     public static final Pattern OWNER_REPO = Pattern.compile(
             "(?:https?://|git@)(git(?:hub|lab).com)[/:]([\\w-]+)/([\\w-]+)(?:/.*|\\.git)?");
@@ -74,13 +102,8 @@ public class GitWrapper {
                     .setCloneAllBranches(false).setCloneSubmodules(false)
                     .setProgressMonitor(callback);
 
-            if (!branch.isEmpty()) {
-                if (branch.contains("/")) {
-                    clone.setBranch(branch.substring(branch.lastIndexOf('/') + 1));
-                } else {
-                    clone.setBranch(branch);
-                }
-            }
+            if (!branch.isEmpty())
+                clone.setBranch(getShortBranch(branch));
 
             result = clone.call();
             return true;
@@ -94,6 +117,299 @@ public class GitWrapper {
         return false;
     }
 
+    private static String getShortBranch(final String branch) {
+        return branch.contains("/") ? branch.substring(branch.lastIndexOf('/') + 1) : branch;
+    }
+
+    // Clones only the given branch (or the default one, if it's "HEAD" or empty), and instead
+    // of checking out the whole working tree, only writes the files that may be useful to us
+    // (see isSparsePath()). The bundled JGit can't limit the history depth nor do sparse
+    // checkouts, but this still avoids writing all the assets of the repository to disk.
+    public static boolean cloneRepoSparse(final String uri, final File cloneTo,
+                                          final String branch,
+                                          final GitCloneProgressCallback callback) {
+        final String name = branch.isEmpty() || branch.equals(Constants.HEAD) ?
+                getDefaultBranch(uri) : getShortBranch(branch);
+
+        Git result = null;
+        try {
+            final CloneCommand clone = Git.cloneRepository()
+                    .setURI(uri).setDirectory(cloneTo)
+                    .setBare(false).setRemote(REMOTE_NAME).setNoCheckout(true)
+                    .setCloneAllBranches(false).setCloneSubmodules(false)
+                    .setProgressMonitor(callback);
+
+            if (name != null) {
+                clone.setBranch(name);
+                clone.setBranchesToClone(Collections.singletonList(Constants.R_HEADS + name));
+            }
+
+            result = clone.call();
+            final Repository repository = result.getRepository();
+
+            // Without checkout, JGit doesn't create the local branch, so do it ourselves
+            final String localBranch = name == null ? repository.getBranch() : name;
+            final ObjectId commit = repository.resolve(getRemoteBranch(localBranch));
+            if (commit == null)
+                return false;
+
+            if (repository.resolve(Constants.HEAD) == null) {
+                final RefUpdate branchUpdate = repository.updateRef(Constants.R_HEADS + localBranch);
+                branchUpdate.setNewObjectId(commit);
+                branchUpdate.forceUpdate();
+                repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + localBranch);
+            }
+
+            checkoutSparse(repository, commit, cloneTo, callback);
+            return true;
+        } catch (GitAPIException | IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (result != null) {
+                result.close();
+            }
+        }
+        return false;
+    }
+
+    // Updates a repository previously cloned with cloneRepoSparse() to the latest commit on
+    // the remote branch, fetching only the new objects and writing only the files changed.
+    // Returns false if the repository can't be updated, and should be cloned again instead.
+    public static boolean updateRepo(final String uri, final File repo,
+                                     final String branch,
+                                     final GitCloneProgressCallback callback) {
+        if (!new File(repo, Constants.DOT_GIT).isDirectory())
+            return false;
+
+        Git git = null;
+        try {
+            git = Git.open(repo);
+            final Repository repository = git.getRepository();
+            if (!uri.equals(repository.getConfig().getString("remote", REMOTE_NAME, "url")))
+                return false;
+
+            // "HEAD" (or nothing) means whatever branch was checked out when cloning
+            final String localBranch = repository.getBranch();
+            if (!branch.isEmpty() && !branch.equals(Constants.HEAD) &&
+                    !getShortBranch(branch).equals(localBranch))
+                return false;
+
+            // Only fetch our branch, not whatever the clone configured
+            final String remoteBranch = getRemoteBranch(localBranch);
+            git.fetch().setRemote(REMOTE_NAME)
+                    .setRefSpecs(new RefSpec("+" + Constants.R_HEADS + localBranch + ":" + remoteBranch))
+                    .setProgressMonitor(callback).call();
+
+            final ObjectId commit = repository.resolve(remoteBranch);
+            if (commit == null)
+                return false;
+
+            // Nothing else writes to the working tree, so it's still as it was checked out
+            // for HEAD, and only what changed since then needs to be written (or deleted)
+            final ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null)
+                return false;
+
+            checkoutSparseChanges(repository, head, commit, repo, callback);
+
+            // Only move the branch once the working tree is written, so that if anything
+            // fails, the changes are written again from the same commit the next time
+            git.reset().setMode(ResetCommand.ResetType.SOFT).setRef(remoteBranch).call();
+            return true;
+        } catch (GitAPIException | IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (git != null) {
+                git.close();
+            }
+        }
+        return false;
+    }
+
+    private static String getRemoteBranch(final String localBranch) {
+        return Constants.R_REMOTES + REMOTE_NAME + "/" + localBranch;
+    }
+
+    // Git servers don't tell which branch HEAD is, but it's the one pointing to the same commit
+    private static String getDefaultBranch(final String uri) {
+        try {
+            final Map<String, Ref> refs = Git.lsRemoteRepository().setRemote(uri).callAsMap();
+            final Ref head = refs.get(Constants.HEAD);
+            if (head == null || head.getObjectId() == null)
+                return null;
+
+            String result = null;
+            for (Ref ref : refs.values()) {
+                if (ref.getName().startsWith(Constants.R_HEADS) &&
+                        head.getObjectId().equals(ref.getObjectId())) {
+                    result = ref.getName().substring(Constants.R_HEADS.length());
+                    if (result.equals(Constants.MASTER))
+                        break; // Prefer "master" if there are several candidates
+                }
+            }
+            return result;
+        } catch (GitAPIException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // Lists the branches on the remote repository in the same format as getBranches()
+    // does for a local clone, since sparse clones only have one of these branches
+    public static ArrayList<String> getRemoteBranches(final String uri) {
+        final ArrayList<String> result = new ArrayList<>();
+        try {
+            for (Ref ref : Git.lsRemoteRepository().setRemote(uri).setHeads(true).call())
+                result.add(getRemoteBranch(ref.getName().substring(Constants.R_HEADS.length())));
+        } catch (GitAPIException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Writes the useful files from the given commit into the directory, streaming
+    // them straight out of the object database instead of checking everything out.
+    // The callback is told about every file as soon as it's written.
+    private static void checkoutSparse(final Repository repository, final ObjectId commit,
+                                       final File workDir,
+                                       final GitCloneProgressCallback callback) throws IOException {
+        final RevWalk revWalk = new RevWalk(repository);
+        final TreeWalk treeWalk = new TreeWalk(repository);
+        try {
+            treeWalk.addTree(revWalk.parseCommit(commit).getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                final FileMode mode = treeWalk.getFileMode(0);
+                if ((mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) ||
+                        !isSparsePath(treeWalk.getPathString()))
+                    continue;
+
+                final File file = new File(workDir, treeWalk.getPathString());
+                writeBlob(repository, treeWalk.getObjectId(0), file);
+                callback.onCheckedOut(file);
+            }
+        } finally {
+            treeWalk.release();
+            revWalk.release();
+        }
+    }
+
+    // Like checkoutSparse(), but for a working tree already checked out for another commit:
+    // only the files which were added or changed are written, and those removed are deleted
+    private static void checkoutSparseChanges(final Repository repository, final ObjectId fromCommit,
+                                              final ObjectId toCommit, final File workDir,
+                                              final GitCloneProgressCallback callback) throws IOException {
+        final RevWalk revWalk = new RevWalk(repository);
+        final TreeWalk treeWalk = new TreeWalk(repository);
+        try {
+            treeWalk.addTree(revWalk.parseCommit(fromCommit).getTree());
+            treeWalk.addTree(revWalk.parseCommit(toCommit).getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                if (!isSparsePath(treeWalk.getPathString()))
+                    continue;
+
+                final File file = new File(workDir, treeWalk.getPathString());
+                final FileMode mode = treeWalk.getFileMode(1);
+                if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    writeBlob(repository, treeWalk.getObjectId(1), file);
+                    callback.onCheckedOut(file);
+                } else if (file.isFile() && !file.delete()) {
+                    // Removed (or no longer a regular file, which we wouldn't check out)
+                    throw new IOException("Could not delete " + file);
+                }
+            }
+        } finally {
+            treeWalk.release();
+            revWalk.release();
+        }
+    }
+
+    private static void writeBlob(final Repository repository, final ObjectId blob,
+                                  final File file) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+            throw new IOException("Could not create the directory for " + file);
+
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            repository.open(blob).copyTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // Determines whether the given path (separated by '/') is worth checking out,
+    // i.e. the resources, the manifest, README-like files or possibly the icons
+    static boolean isSparsePath(final String path) {
+        // Hidden files and directories are ignored, just like findUsefulResources() does
+        if (path.startsWith(".") || path.contains("/."))
+            return false;
+
+        final String name = path.substring(path.lastIndexOf('/') + 1);
+        return PATTERN_SPARSE_PATH.matcher(path).find() ||
+                name.equals(MANIFEST) ||
+                PATTERN_README.matcher(name).find();
+    }
+
+    // Returns the ID of the commit currently checked out, or null if there is none
+    public static String getHeadCommit(final File repo) {
+        Git git = null;
+        try {
+            git = Git.open(repo);
+            final ObjectId head = git.getRepository().resolve("HEAD");
+            return head == null ? null : head.getName();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (git != null) {
+                git.close();
+            }
+        }
+        return null;
+    }
+
+    // Returns the paths (relative to the repository root, separated by '/') of the files
+    // which differ between both commits, or null if they can't be compared for any reason
+    public static HashSet<String> getChangedPaths(final File repo,
+                                                  final String fromCommit,
+                                                  final String toCommit) {
+        Git git = null;
+        RevWalk revWalk = null;
+        TreeWalk treeWalk = null;
+        try {
+            git = Git.open(repo);
+            final Repository repository = git.getRepository();
+            final ObjectId from = repository.resolve(fromCommit);
+            final ObjectId to = repository.resolve(toCommit);
+            if (from == null || to == null)
+                return null;
+
+            revWalk = new RevWalk(repository);
+            treeWalk = new TreeWalk(repository);
+            treeWalk.addTree(revWalk.parseCommit(from).getTree());
+            treeWalk.addTree(revWalk.parseCommit(to).getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+
+            final HashSet<String> result = new HashSet<>();
+            while (treeWalk.next())
+                result.add(treeWalk.getPathString());
+
+            return result;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (treeWalk != null)
+                treeWalk.release();
+            if (revWalk != null)
+                revWalk.release();
+            if (git != null)
+                git.close();
+        }
+        return null;
+    }
+
     public static ArrayList<String> getBranches(final File repo) {
         try {
             final List<Ref> refs = Git.open(repo)
@@ -117,43 +433,123 @@ public class GitWrapper {
         final ArrayList<File> xml = new ArrayList<>();
         final ArrayList<File> img = new ArrayList<>();
         final ArrayList<File> readme = new ArrayList<>();
+        final ArrayList<File> strings = new ArrayList<>(); // .xml files with <string or <plurals
 
         private RepositoryResources() {
         }
     }
 
+    // Directories which never contain anything useful (or only generated copies of it)
+    private static final HashSet<String> PRUNED_DIRECTORIES = new HashSet<>(Arrays.asList(
+            "build", "bin", "gen", "out", "target", "node_modules", "bower_components"
+    ));
+
     // Finds useful resources so that they can be cached in memory instead performing
     // IO operations all the time to look for the desired file. Returns a list of all
-    // the .xml, .png or README-like files.
-    public static RepositoryResources findUsefulResources(File dir) {
+    // the .xml, .png or README-like files, and which of the .xml have strings.
+    //
+    // The directories are walked in parallel, and the .xml files are looked into as
+    // soon as they're found, so the whole repository is only walked once.
+    public static RepositoryResources findUsefulResources(final File dir) {
         final RepositoryResources result = new RepositoryResources();
-        findUsefulResources(dir, result);
+        final ResourcesFinder finder = new ResourcesFinder();
+        if (finder.find(dir)) {
+            synchronized (finder) {
+                result.xml.addAll(finder.mXml);
+                result.img.addAll(finder.mImg);
+                result.readme.addAll(finder.mReadme);
+                result.strings.addAll(finder.mStrings);
+            }
+        }
+
+        // The walk order is random, but the results should be the same every time
+        Collections.sort(result.xml);
+        Collections.sort(result.img);
+        Collections.sort(result.readme);
+        Collections.sort(result.strings);
         return result;
     }
 
-    private static void findUsefulResources(final File dir, final RepositoryResources result) {
-        if (!dir.getName().startsWith(".")) {
-            if (dir.isDirectory()) {
-                for (File child : dir.listFiles())
-                    findUsefulResources(child, result);
-            } else {
-                final String name = dir.getName();
-                if (PATTERN_XML.matcher(name).find())
-                    result.xml.add(dir);
-                else if (PATTERN_IMG.matcher(name).find())
-                    result.img.add(dir);
-                else if (PATTERN_README.matcher(name).find())
-                    result.readme.add(dir);
+    public static ArrayList<File> searchAndroidResources(final RepositoryResources resources) {
+        return new ArrayList<>(resources.strings);
+    }
+
+    private static class ResourcesFinder {
+        private final ExecutorService mExecutor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+        private final AtomicInteger mPending = new AtomicInteger();
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        // Guarded by this
+        private final ArrayList<File> mXml = new ArrayList<>();
+        private final ArrayList<File> mImg = new ArrayList<>();
+        private final ArrayList<File> mReadme = new ArrayList<>();
+        private final ArrayList<File> mStrings = new ArrayList<>();
+
+        // Returns false if the walk was interrupted
+        boolean find(final File root) {
+            try {
+                if (root.isDirectory()) {
+                    submit(root);
+                    mDone.await();
+                }
+                return true;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                mExecutor.shutdownNow();
             }
         }
-    }
 
-    public static ArrayList<File> searchAndroidResources(final RepositoryResources resources) {
-        ArrayList<File> result = new ArrayList<>();
-        for (File file : resources.xml)
-            if (FileUtils.fileContains(file, STR_STRING, STR_PLURALS) != -1)
-                result.add(file);
-        return result;
+        private void submit(final File dir) {
+            mPending.incrementAndGet();
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        walk(dir);
+                    } finally {
+                        if (mPending.decrementAndGet() == 0)
+                            mDone.countDown();
+                    }
+                }
+            });
+        }
+
+        private void walk(final File dir) {
+            final File[] children = dir.listFiles();
+            if (children == null)
+                return;
+
+            for (File child : children) {
+                final String name = child.getName();
+                if (name.startsWith("."))
+                    continue;
+
+                if (child.isDirectory()) {
+                    if (!PRUNED_DIRECTORIES.contains(name))
+                        submit(child);
+                } else if (PATTERN_XML.matcher(name).find()) {
+                    final boolean hasStrings = STRINGS_SCANNER.indexIn(child) != -1;
+                    synchronized (this) {
+                        mXml.add(child);
+                        if (hasStrings)
+                            mStrings.add(child);
+                    }
+                } else if (PATTERN_IMG.matcher(name).find()) {
+                    synchronized (this) {
+                        mImg.add(child);
+                    }
+                } else if (PATTERN_README.matcher(name).find()) {
+                    synchronized (this) {
+                        mReadme.add(child);
+                    }
+                }
+            }
+        }
     }
 
     //region Searching Android icon
@@ -314,7 +710,7 @@ public class GitWrapper {
 
     public static String mayUseTranslationServices(final RepositoryResources resources) {
         for (File file : resources.readme) {
-            int i = FileUtils.fileContains(file, STR_TRANSLATION_SERVICES);
+            int i = TRANSLATION_SERVICES_SCANNER.indexIn(file);
             if (i != -1)
                 return STR_TRANSLATION_SERVICES[i];
         }
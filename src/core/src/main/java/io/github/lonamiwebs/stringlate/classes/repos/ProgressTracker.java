@@ -0,0 +1,290 @@
+package io.github.lonamiwebs.stringlate.classes.repos;
+
+import net.gsantner.opoc.util.FileUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.resources.Resources;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Keeps the translation progress of every locale of a repository: how many of the default
+// strings are translated, and how many characters these have (so that translating long
+// strings counts more than translating short ones).
+//
+// The progress of a locale being translated is updated as its strings are added or removed,
+// without counting them all again, and it's saved along that of the other locales when the
+// resources are saved. The saved progress of a locale is only used while neither its file
+// nor the default resources changed since (e.g. after synchronizing), otherwise it's
+// counted again. The file also keeps the progress of the last locale saved as it used to.
+public class ProgressTracker {
+
+    //region Members
+
+    private static final String KEY_LOCALE = "locale";
+    private static final String KEY_LOCALES = "locales";
+    private static final String KEY_DEFAULTS = "defaults";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_LENGTH = "length";
+
+    private static class LocaleProgress {
+        final RepoProgress progress;
+        long lastModified, length; // Of the locale file, as it was when it was counted
+
+        LocaleProgress(final RepoProgress progress, final long lastModified, final long length) {
+            this.progress = progress;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    private final RepoHandler mRepo;
+    private final File mFile;
+
+    private boolean mLoaded;
+    private boolean mDirty; // Something was counted again and should be saved
+    private final HashMap<String, LocaleProgress> mEntries = new HashMap<>();
+    private String mDefaultsStamp = ""; // Of the default resources the entries were counted with
+    private String mLastLocale;
+
+    // The characters of every default string, loaded only to count or track progress
+    private HashMap<String, Integer> mWeights;
+    private int mTotalChars;
+
+    //endregion
+
+    //region Constructor
+
+    ProgressTracker(final RepoHandler repo, final File file) {
+        mRepo = repo;
+        mFile = file;
+    }
+
+    //endregion
+
+    //region Getting progress
+
+    // The progress of the last locale which was saved, as it was then (it's
+    // not checked, so this is cheap to show on lists). May return null.
+    public synchronized RepoProgress getLastProgress() {
+        load();
+        final LocaleProgress entry = mLastLocale == null ? null : mEntries.get(mLastLocale);
+        return entry == null ? null : entry.progress;
+    }
+
+    public synchronized RepoProgress getProgress(final String locale) {
+        load();
+        final RepoProgress result = getValidProgress(locale);
+        saveIfDirty();
+        return result;
+    }
+
+    // The progress of every locale but the default, in the same order as getLocales()
+    public synchronized LinkedHashMap<String, RepoProgress> getAllProgress() {
+        load();
+        final LinkedHashMap<String, RepoProgress> result = new LinkedHashMap<>();
+        for (String locale : mRepo.getLocales()) {
+            if (!locale.equals(RepoHandler.DEFAULT_LOCALE)) {
+                final RepoProgress progress = getValidProgress(locale);
+                if (progress != null)
+                    result.put(locale, progress);
+            }
+        }
+        saveIfDirty();
+        return result;
+    }
+
+    // Counts the progress of the locale again if its file or the defaults changed
+    private RepoProgress getValidProgress(final String locale) {
+        final File file = mRepo.getResourcesFile(locale);
+        if (!file.isFile())
+            return null;
+
+        final String defaultsStamp = getDefaultsStamp();
+        LocaleProgress entry = mEntries.get(locale);
+        if (entry == null || !defaultsStamp.equals(mDefaultsStamp) ||
+                entry.lastModified != file.lastModified() || entry.length != file.length()) {
+            if (!defaultsStamp.equals(mDefaultsStamp)) {
+                // Every entry was counted with other defaults, so none can be used
+                mEntries.clear();
+                mWeights = null;
+                mDefaultsStamp = defaultsStamp;
+            }
+            entry = new LocaleProgress(count(mRepo.loadResources(locale)), file.lastModified(), file.length());
+            mEntries.put(locale, entry);
+            mDirty = true;
+        }
+        return entry.progress;
+    }
+
+    //endregion
+
+    //region Tracking changes
+
+    // Counts the progress of the resources of the locale, and keeps it up to date while
+    // they're modified. The progress is saved every time the resources are saved.
+    public synchronized void track(final String locale, final Resources resources) {
+        load();
+        final String defaultsStamp = getDefaultsStamp();
+        if (!defaultsStamp.equals(mDefaultsStamp)) {
+            mEntries.clear();
+            mWeights = null;
+            mDefaultsStamp = defaultsStamp;
+        }
+
+        final File file = mRepo.getResourcesFile(locale);
+        final LocaleProgress entry = new LocaleProgress(count(resources), file.lastModified(), file.length());
+        mEntries.put(locale, entry);
+        mLastLocale = locale;
+        save();
+
+        resources.setOnChangeListener(new Resources.OnChangeListener() {
+            @Override
+            public void onTagAdded(final String id) {
+                synchronized (ProgressTracker.this) {
+                    final Integer chars = mWeights == null ? null : mWeights.get(id);
+                    if (chars != null) {
+                        entry.progress.translatedCount++;
+                        entry.progress.currentChars += chars;
+                    }
+                }
+            }
+
+            @Override
+            public void onTagRemoved(final String id) {
+                synchronized (ProgressTracker.this) {
+                    final Integer chars = mWeights == null ? null : mWeights.get(id);
+                    if (chars != null) {
+                        entry.progress.translatedCount--;
+                        entry.progress.currentChars -= chars;
+                    }
+                }
+            }
+
+            @Override
+            public void onSaved() {
+                synchronized (ProgressTracker.this) {
+                    // The progress now matches the file as it's been saved
+                    entry.lastModified = file.lastModified();
+                    entry.length = file.length();
+                    mEntries.put(locale, entry);
+                    mLastLocale = locale;
+                    save();
+                }
+            }
+        });
+    }
+
+    private RepoProgress count(final Resources resources) {
+        loadWeights();
+        final RepoProgress progress = new RepoProgress();
+        progress.stringsCount = mWeights.size();
+        progress.totalChars = mTotalChars;
+        for (ResTag rt : resources) {
+            final Integer chars = mWeights.get(rt.getId());
+            if (chars != null) {
+                progress.translatedCount++;
+                progress.currentChars += chars;
+            }
+        }
+        return progress;
+    }
+
+    private void loadWeights() {
+        if (mWeights != null)
+            return;
+
+        mWeights = new HashMap<>();
+        mTotalChars = 0;
+        for (ResTag rt : mRepo.loadDefaultResources()) {
+            mWeights.put(rt.getId(), rt.getContentLength());
+            mTotalChars += rt.getContentLength();
+        }
+    }
+
+    // Changes whenever any of the default resources files does
+    private String getDefaultsStamp() {
+        final StringBuilder sb = new StringBuilder();
+        for (File f : mRepo.getDefaultResourcesFiles())
+            sb.append(f.getName()).append(':').append(f.lastModified()).append(':').append(f.length()).append(';');
+        return sb.toString();
+    }
+
+    //endregion
+
+    //region Loading and saving
+
+    private void load() {
+        if (mLoaded)
+            return;
+
+        mLoaded = true;
+        final String json = mFile.isFile() ? FileUtils.readTextFile(mFile) : "";
+        if (json.isEmpty())
+            return;
+
+        try {
+            final JSONObject root = new JSONObject(json);
+            mDefaultsStamp = root.optString(KEY_DEFAULTS, "");
+            mLastLocale = root.optString(KEY_LOCALE, null);
+
+            final JSONObject locales = root.optJSONObject(KEY_LOCALES);
+            if (locales != null) {
+                final Iterator<String> it = locales.keys();
+                while (it.hasNext()) {
+                    final String locale = it.next();
+                    final JSONObject entry = locales.getJSONObject(locale);
+                    mEntries.put(locale, new LocaleProgress(RepoProgress.fromJson(entry),
+                            entry.optLong(KEY_LAST_MODIFIED), entry.optLong(KEY_LENGTH)));
+                }
+            } else {
+                // Older versions only saved the progress of the last locale, with nothing
+                // to check it against, so keep it just to show it until it's counted again
+                mLastLocale = "";
+                mEntries.put(mLastLocale, new LocaleProgress(RepoProgress.fromJson(root), 0, 0));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void saveIfDirty() {
+        if (mDirty)
+            save();
+    }
+
+    private boolean save() {
+        mDirty = false;
+        try {
+            final JSONObject locales = new JSONObject();
+            for (Map.Entry<String, LocaleProgress> entry : mEntries.entrySet()) {
+                if (!entry.getKey().isEmpty()) {
+                    locales.put(entry.getKey(), entry.getValue().progress.toJson()
+                            .put(KEY_LAST_MODIFIED, entry.getValue().lastModified)
+                            .put(KEY_LENGTH, entry.getValue().length));
+                }
+            }
+
+            final LocaleProgress last = mLastLocale == null ? null : mEntries.get(mLastLocale);
+            final JSONObject root = last == null ? new JSONObject() : last.progress.toJson();
+            if (mLastLocale != null)
+                root.put(KEY_LOCALE, mLastLocale);
+
+            root.put(KEY_DEFAULTS, mDefaultsStamp);
+            root.put(KEY_LOCALES, locales);
+            return AtomicFile.write(mFile, root.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    //endregion
+}
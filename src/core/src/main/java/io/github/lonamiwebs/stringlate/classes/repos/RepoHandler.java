@@ -3,11 +3,9 @@ package io.github.lonamiwebs.stringlate.classes.repos;
 import net.gsantner.opoc.util.FileUtils;
 import net.gsantner.opoc.util.ZipUtils;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InvalidObjectException;
@@ -19,18 +17,39 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantLock;
 
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
 import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
 import io.github.lonamiwebs.stringlate.classes.git.GitHub;
 import io.github.lonamiwebs.stringlate.classes.locales.LocaleString;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.ResourcesParser;
+import io.github.lonamiwebs.stringlate.classes.resources.ResourcesSnapshot;
+import io.github.lonamiwebs.stringlate.classes.resources.SearchIndex;
+import io.github.lonamiwebs.stringlate.classes.resources.TemplatePlan;
+import io.github.lonamiwebs.stringlate.classes.resources.TranslationLookup;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.IdPool;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+import io.github.lonamiwebs.stringlate.classes.sources.GitSource;
 import io.github.lonamiwebs.stringlate.classes.sources.SourceSettings;
 import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
 
+import static io.github.lonamiwebs.stringlate.classes.Messenger.OnSyncProgress.STAGE_MERGE;
+import static io.github.lonamiwebs.stringlate.classes.Messenger.OnSyncProgress.STAGE_WRITE;
+
 // Represents a locally saved string repository, which can be synchronized from any StringsSource
 public class RepoHandler implements Comparable<RepoHandler> {
 
@@ -40,16 +59,27 @@ public class RepoHandler implements Comparable<RepoHandler> {
     private final SourceSettings mSourceSettings;
 
     public final File mRoot, mCacheDir;
-    private final File mProgressFile;
+    private final ProgressTracker mProgressTracker;
 
     private final ArrayList<String> mLocales = new ArrayList<>();
+    private final HashMap<File, TemplatePlan> mTemplatePlans = new HashMap<>();
+    private final HashMap<File, SearchIndex> mSearchIndices = new HashMap<>();
+    private final IdPool mIdPool = new IdPool(); // Every locale shares the same resource IDs
+    private final TranslationLookup mTranslationLookup = new TranslationLookup(mIdPool);
 
     public static final String DEFAULT_LOCALE = "default";
 
     private final static ReentrantLock syncingLock = new ReentrantLock();
     private final static HashSet<File> rootsInSync = new HashSet<>();
-    private StringsSource mSyncingSource;
-    private boolean wasCancelled;
+    private volatile StringsSource mSyncingSource;
+    private volatile boolean wasCancelled; // Set from other threads, cleared when scheduled
+
+    private static final Metrics.Timer SYNC_TIMER = Metrics.timer("sync");
+    private static final Metrics.Counter SYNC_FAILURES = Metrics.counter("sync.failures");
+    private static final Metrics.Timer WRITE_DEFAULTS_TIMER = Metrics.timer("sync.write_defaults");
+    private static final Metrics.Timer MERGE_TIMER = Metrics.timer("sync.merge");
+    private static final Metrics.Counter MERGED_LOCALES = Metrics.counter("sync.merge.locales");
+    private static final Metrics.Timer TEMPLATE_TIMER = Metrics.timer("template.apply");
 
     //endregion
 
@@ -60,10 +90,11 @@ public class RepoHandler implements Comparable<RepoHandler> {
         mCacheDir = cacheDir;
         settings = new RepoSettings(mRoot);
         settings.setSource(source);
+        settings.flush(); // Repositories are found by their settings file
 
         mSourceSettings = new SourceSettings(mRoot);
         settings.checkUpgradeSettingsToSpecific(mSourceSettings);
-        mProgressFile = new File(mRoot, "translation_progress.json");
+        mProgressTracker = new ProgressTracker(this, new File(mRoot, "translation_progress.json"));
 
         loadLocales();
     }
@@ -75,7 +106,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
         mSourceSettings = new SourceSettings(mRoot);
         settings.checkUpgradeSettingsToSpecific(mSourceSettings);
 
-        mProgressFile = new File(mRoot, "translation_progress.json");
+        mProgressTracker = new ProgressTracker(this, new File(mRoot, "translation_progress.json"));
 
         loadLocales();
     }
@@ -85,7 +116,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
     //region Utilities
 
     // Retrieves the File object for the given locale
-    private File getResourcesFile(final String locale) {
+    File getResourcesFile(final String locale) {
         if (locale == null)
             throw new IllegalArgumentException("locale cannot be null");
         return new File(mRoot, locale + "/strings.xml");
@@ -116,7 +147,15 @@ public class RepoHandler implements Comparable<RepoHandler> {
     public File[] getDefaultResourcesFiles() {
         File root = new File(mRoot, DEFAULT_LOCALE);
         if (root.isDirectory()) {
-            File[] files = root.listFiles();
+            // Compiled templates and snapshots are saved next to them, but aren't resources
+            File[] files = root.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return !TemplatePlan.isPlanFile(file) && !ResourcesSnapshot.isSnapshotFile(file) &&
+                            !SearchIndex.isIndexFile(file) && !TranslationLookup.isColumnFile(file) &&
+                            !AtomicFile.isTempFile(file);
+                }
+            });
             if (files != null)
                 return files;
         }
@@ -137,7 +176,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
     // Note that previous modifications do NOT imply the file being unsaved.
     public boolean anyModified() {
         for (String locale : mLocales)
-            if (Resources.fromFile(getResourcesFile(locale)).wasModified())
+            if (Resources.fromFile(getResourcesFile(locale), mIdPool, true).wasModified())
                 return true;
         return false;
     }
@@ -147,13 +186,29 @@ public class RepoHandler implements Comparable<RepoHandler> {
         return mLocales.isEmpty();
     }
 
+    // Writes the settings changed recently now, rather than a short while later
+    public void flushSettings() {
+        settings.flush();
+        mSourceSettings.flush();
+    }
+
     // Deletes the repository erasing its existence from Earth. Forever. (Unless added again)
     public boolean delete() {
+        // Settings not written yet would otherwise bring the directory back
+        settings.discard();
+        mSourceSettings.discard();
+
+        FileUtils.deleteRecursive(getSyncDir());
         boolean ok = FileUtils.deleteRecursive(mRoot);
         Messenger.notifyRepoRemoved(this);
         return ok;
     }
 
+    // Kept between synchronizations so that sources can reuse it
+    private File getSyncDir() {
+        return new File(mCacheDir, "sync_" + mRoot.getName());
+    }
+
     private File getTempImportDir() {
         return new File(mCacheDir, "tmp_import");
     }
@@ -238,13 +293,23 @@ public class RepoHandler implements Comparable<RepoHandler> {
         } else {
             rootsInSync.add(mRoot);
             mSyncingSource = source;
-            wasCancelled = false;
             syncingLock.unlock();
         }
 
+        final long start = Metrics.start();
+        boolean okay = false;
+        AtomicFile.beginBatch(); // Many files are written, sync their directories only once
         try {
-            return doSyncResources(source, desiredIconDpi, callback);
+            okay = doSyncResources(source, desiredIconDpi, callback);
+            return okay;
         } finally {
+            SYNC_TIMER.stop(start);
+            if (!okay)
+                SYNC_FAILURES.increment();
+
+            flushSettings();
+            AtomicFile.endBatch();
+
             syncingLock.lock();
             rootsInSync.remove(mRoot);
             mSyncingSource = null;
@@ -253,17 +318,23 @@ public class RepoHandler implements Comparable<RepoHandler> {
         }
     }
 
+    // May also be called before the sync starts, e.g. if it's still scheduled
     public void cancel() {
-        if (mSyncingSource != null) {
+        if (mSyncingSource != null)
             mSyncingSource.cancel();
-            wasCancelled = true;
-        }
+        wasCancelled = true;
     }
 
     public boolean wasCancelled() {
         return wasCancelled;
     }
 
+    // Called when a new synchronization is scheduled, and not once it starts,
+    // so that a cancel() landing before the sync actually begins isn't lost
+    void clearCancelled() {
+        wasCancelled = false;
+    }
+
     // Should be called from a background thread
     private boolean doSyncResources(final StringsSource source,
                                     final int desiredIconDpi,
@@ -275,42 +346,136 @@ public class RepoHandler implements Comparable<RepoHandler> {
             mSourceSettings.reset(source.getName());
         }
 
-        final File tmpWorkDir = new File(mCacheDir, "tmp_sync_" + mRoot.getName());
-        if (tmpWorkDir.isDirectory())
-            if (!FileUtils.deleteRecursive(tmpWorkDir))
+        // Older versions used a temporary directory which was deleted after every sync
+        final File oldTmpWorkDir = new File(mCacheDir, "tmp_sync_" + mRoot.getName());
+        if (oldTmpWorkDir.isDirectory())
+            FileUtils.deleteRecursive(oldTmpWorkDir);
+
+        if (!source.setup(mSourceSettings, getSyncDir(), desiredIconDpi, callback))
+            return false;
+
+        // Nothing needs to be done for the default resources if none of them changed
+        final boolean defaultsModified = !hasDefaultLocale() || source.wasModified(null) ||
+                !new HashSet<>(source.getDefaultResources()).equals(
+                        new HashSet<>(settings.getRemotePaths().values()));
+
+        // Unchanged resources were already merged the last time, but if the
+        // default resources changed, every locale may have unused strings now
+        final HashSet<String> toMerge = new HashSet<>();
+        for (String locale : source.getLocales())
+            if (locale != null && (!hasLocale(locale) || source.wasModified(locale)))
+                toMerge.add(locale);
+
+        final HashSet<String> toUpdate = new HashSet<>(toMerge);
+        if (defaultsModified)
+            for (String locale : getLocales())
+                if (!locale.equals(DEFAULT_LOCALE))
+                    toUpdate.add(locale);
+
+        // The locales are merged in the background while the default resources are written,
+        // and as soon as each is merged (and the defaults are ready), it's cleaned and saved
+        // (files are written atomically, so saving several at once is fine)
+        final FutureTask<Set<String>> defaultIds = new FutureTask<>(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                // Only the IDs are needed, and a set is safe to share among the threads
+                final HashSet<String> result = new HashSet<>();
+                for (ResTag rt : loadDefaultResources())
+                    result.add(rt.getId());
+                return result;
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(toUpdate.size(), Runtime.getRuntime().availableProcessors())));
+        int failedLocales = 0;
+        try {
+            final CompletionService<Resources> merged = new ExecutorCompletionService<>(executor);
+            for (final String locale : toUpdate) {
+                merged.submit(new Callable<Resources>() {
+                    @Override
+                    public Resources call() throws Exception {
+                        final Resources resources = updateLocale(
+                                source, locale, toMerge.contains(locale), defaultIds);
+                        if (!resources.save())
+                            throw new IOException("Could not save the locale " + locale);
+                        return resources;
+                    }
+                });
+            }
+
+            callback.onUpdate(STAGE_WRITE, 0f);
+            final long writeStart = Metrics.start();
+            if (defaultsModified && !writeDefaultResources(source))
                 return false;
+            WRITE_DEFAULTS_TIMER.stop(writeStart);
+
+            if (!toUpdate.isEmpty())
+                defaultIds.run();
+            callback.onUpdate(STAGE_WRITE, 1f / (toUpdate.size() + 1));
+
+            // Report the locales in the order they finish merging and saving
+            for (int done = 1; done <= toUpdate.size(); ++done) {
+                try {
+                    merged.take().get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    failedLocales++;
+                }
+                callback.onUpdate(STAGE_MERGE, (float) done / toUpdate.size());
+                callback.onUpdate(STAGE_WRITE, (float) (done + 1) / (toUpdate.size() + 1));
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
 
-        if (!source.setup(mSourceSettings, tmpWorkDir, desiredIconDpi, callback))
+        if (failedLocales != 0) {
+            // Don't mark it as synced, or the locales which failed wouldn't be merged again
+            // until they changed (the next sync compares against the last complete one)
+            loadLocales();
             return false;
+        }
 
-        callback.onUpdate(2, (0f / 3f));
+        // Check out if we have any icon for this repository
+        File icon = source.getIcon();
+        if (icon != null) {
+            // We have an icon to show, copyFile it to our repository root
+            // and save it's path (we must keep track of the used extension)
+            File newIcon = new File(mRoot, icon.getName());
+            if (!newIcon.isFile() || newIcon.delete()) {
+                if (FileUtils.copyFile(icon, newIcon))
+                    settings.setIconFile(newIcon);
+            }
+        }
+
+        loadLocales(); // Reload the locales
+
+        callback.onUpdate(STAGE_MERGE, 1f);
+        callback.onUpdate(STAGE_WRITE, 1f);
+
+        source.markSynced(mSourceSettings);
+        return true;
+    }
 
+    // Replaces the default resources with those from the source
+    private boolean writeDefaultResources(final StringsSource source) {
         // Delete all the previous default resources since their
         // names might have changed, been removed, or some new added.
         settings.clearRemotePaths();
-        for (File f : getDefaultResourcesFiles())
+        clearTemplatePlans();
+        for (File f : getDefaultResourcesFiles()) {
+            TemplatePlan.delete(f);
+            ResourcesSnapshot.delete(f);
+            SearchIndex.delete(f);
+            TranslationLookup.delete(f);
             if (!f.delete())
                 return false;
-
-        for (String locale : source.getLocales()) {
-            if (locale == null)
-                continue; // Should not happen
-
-            // Load in memory the old saved resources. We need to work
-            // on this file because we're going to be merging changes.
-            Resources resources = loadResources(locale);
-
-            // Add new translated tags without overwriting existing ones
-            for (ResTag rt : source.getResources(locale))
-                if (!resources.wasModified(rt.getId()))
-                    resources.addTag(rt);
-
-            // Save the changes
-            resources.save();
         }
 
-        callback.onUpdate(2, (1f / 3f));
-
         // Default resources are treated specially, since their name matters. The name for
         // non-default resources doesn't because it can be inferred from defaults' (for now).
         for (String originalName : source.getDefaultResources()) {
@@ -341,52 +506,47 @@ public class RepoHandler implements Comparable<RepoHandler> {
                         return false;
             }
         }
-
-        callback.onUpdate(2, (2f / 3f));
-
-        // Check out if we have any icon for this repository
-        File icon = source.getIcon();
-        if (icon != null) {
-            // We have an icon to show, copyFile it to our repository root
-            // and save it's path (we must keep track of the used extension)
-            File newIcon = new File(mRoot, icon.getName());
-            if (!newIcon.isFile() || newIcon.delete()) {
-                if (FileUtils.copyFile(icon, newIcon))
-                    settings.setIconFile(newIcon);
-            }
-        }
-
-        // Clean old unused strings which now don't exist on the default resources files
-        unusedStringsCleanup();
-        loadLocales(); // Reload the locales
-
-        callback.onUpdate(2, (3f / 3f));
-
         return true;
     }
 
-    private void unusedStringsCleanup() {
-        final Resources defaultResources = loadDefaultResources();
-
-        for (String locale : getLocales()) {
-            if (locale.equals(DEFAULT_LOCALE))
-                continue;
+    // Merges the source's resources into the locale if merge is true, and cleans the
+    // strings which don't exist on the default resources any more (waiting for these
+    // to be ready). Returns the resources to be saved. Locales are independent from
+    // each other, so several can be updated in parallel.
+    private Resources updateLocale(final StringsSource source, final String locale,
+                                   final boolean merge, final Future<Set<String>> defaultIdsFuture)
+            throws InterruptedException, ExecutionException {
+        // Load in memory the old saved resources. We need to work
+        // on this file because we're going to be merging changes.
+        final long start = Metrics.start();
+        final Resources resources = loadResources(locale);
 
-            final Resources resources = loadResources(locale);
+        if (merge) {
+            // Add new translated tags without overwriting existing ones
+            for (ResTag rt : source.getResources(locale))
+                if (!resources.wasModified(rt.getId()))
+                    resources.addTag(rt);
+        }
 
+        // Clean old unused strings which now don't exist on the default resources files,
+        // unless there are no default resources at all (then something went wrong)
+        final Set<String> defaultIds = defaultIdsFuture.get();
+        if (!defaultIds.isEmpty()) {
             // Find those which we need to remove (we can't remove them right
             // away unless with used an Iterator<ResTag>, but this also works)
             final ArrayList<String> toRemove = new ArrayList<>();
             for (ResTag rt : resources)
-                if (!defaultResources.contains(rt.getId()))
+                if (!defaultIds.contains(rt.getId()))
                     toRemove.add(rt.getId());
 
-            // Do remove the unused strings and save
             for (String remove : toRemove)
                 resources.deleteId(remove);
-
-            resources.save();
         }
+
+        // This includes waiting for the default resources, but the time is spent either way
+        MERGE_TIMER.stop(start);
+        MERGED_LOCALES.increment();
+        return resources;
     }
 
     //endregion
@@ -397,7 +557,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
         // Mix up all the resource files into one
         Resources resources = Resources.empty();
         for (File f : getDefaultResourcesFiles()) {
-            for (ResTag rt : Resources.fromFile(f)) {
+            for (ResTag rt : Resources.fromFile(f, mIdPool, true)) {
                 resources.addTag(rt);
             }
         }
@@ -405,7 +565,18 @@ public class RepoHandler implements Comparable<RepoHandler> {
     }
 
     public Resources loadResources(final String locale) {
-        return Resources.fromFile(getResourcesFile(locale));
+        return Resources.fromFile(getResourcesFile(locale), mIdPool, true);
+    }
+
+    // Returns the (non-empty) content of the string on every locale except the given one,
+    // in the same order as getLocales(), without having to load every locale
+    public LinkedHashMap<String, String> getTranslations(final String resourceId, final String exceptLocale) {
+        final LinkedHashMap<String, File> localeFiles = new LinkedHashMap<>();
+        for (String locale : getLocales())
+            if (!locale.equals(exceptLocale))
+                localeFiles.put(locale, getResourcesFile(locale));
+
+        return mTranslationLookup.get(resourceId, localeFiles);
     }
 
     // Returns "" if the template wasn't applied successfully (never null)
@@ -424,7 +595,7 @@ public class RepoHandler implements Comparable<RepoHandler> {
     // there will be no strings to replace.
     public boolean canApplyTemplate(File template, String locale) {
         if (hasLocale(locale) && template.isFile()) {
-            Resources templateResources = Resources.fromFile(template);
+            Resources templateResources = Resources.fromFile(template, mIdPool);
             Resources localeResources = loadResources(locale);
             for (ResTag rt : localeResources)
                 if (templateResources.contains(rt.getId()))
@@ -433,12 +604,40 @@ public class RepoHandler implements Comparable<RepoHandler> {
         return false;
     }
 
-    // TODO Why do I load the resources all the time - can't I just pass the loaded one?
     // Returns TRUE if the template was applied successfully
     public boolean applyTemplate(final File template, final String locale, final OutputStream out) {
-        return hasLocale(locale) &&
-                template.isFile() &&
-                ResourcesParser.applyTemplate(template, loadResources(locale), out);
+        return hasLocale(locale) && applyTemplate(template, loadResources(locale), out);
+    }
+
+    private boolean applyTemplate(final File template, final Resources resources, final OutputStream out) {
+        if (!template.isFile())
+            return false;
+
+        final long start = Metrics.start();
+        final TemplatePlan plan = getTemplatePlan(template);
+        final boolean result = plan == null ?
+                ResourcesParser.applyTemplate(template, resources, out) :
+                ResourcesParser.applyTemplate(plan, resources, out);
+        TEMPLATE_TIMER.stop(start);
+        return result;
+    }
+
+    // Templates are compiled only once, and reused until they change. They're
+    // also cached on disk so that other instances can reuse them as well.
+    private synchronized TemplatePlan getTemplatePlan(final File template) {
+        TemplatePlan plan = mTemplatePlans.get(template);
+        if (plan == null || !plan.isUpToDate(template)) {
+            plan = TemplatePlan.fromFile(template);
+            if (plan == null)
+                mTemplatePlans.remove(template);
+            else
+                mTemplatePlans.put(template, plan);
+        }
+        return plan;
+    }
+
+    private synchronized void clearTemplatePlans() {
+        mTemplatePlans.clear();
     }
 
     // Never returns null
@@ -454,13 +653,15 @@ public class RepoHandler implements Comparable<RepoHandler> {
         File[] files = getDefaultResourcesFiles();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         HashMap<String, String> paths = settings.getRemotePaths();
+        Resources resources = hasLocale(locale) ? loadResources(locale) : null;
         for (File template : files) {
             String path = paths.get(template.getName());
             try {
                 out.write(beforeName.getBytes());
                 out.write((path == null ? template.getName() : path).getBytes());
                 out.write(betweenNameXml.getBytes());
-                applyTemplate(template, locale, out);
+                if (resources != null)
+                    applyTemplate(template, resources, out);
                 out.write(afterXml.getBytes());
             } catch (IOException ignored) {
             }
@@ -472,6 +673,38 @@ public class RepoHandler implements Comparable<RepoHandler> {
 
     //endregion
 
+    //region Searching strings
+
+    // IDs of the strings whose ID or content, either on the default resources or on
+    // the locale (which may be null), match the query (see SearchIndex.MATCH_*)
+    public HashSet<String> searchStrings(final String query, final String locale, final int match) {
+        final HashSet<String> result = new HashSet<>();
+        for (File f : getDefaultResourcesFiles())
+            getSearchIndex(f).search(query, match, result);
+
+        if (locale != null && !locale.equals(DEFAULT_LOCALE) && getResourcesFile(locale).isFile())
+            getSearchIndex(getResourcesFile(locale)).search(query, match, result);
+
+        return result;
+    }
+
+    // Indices are kept in memory while they're up to date, and loaded from disk
+    // or built (and saved for next time) if they're not
+    private synchronized SearchIndex getSearchIndex(final File file) {
+        SearchIndex index = mSearchIndices.get(file);
+        if (index == null || !index.isUpToDate(file)) {
+            index = SearchIndex.load(file);
+            if (index == null) {
+                index = SearchIndex.build(file, null, Resources.fromFile(file, mIdPool, true));
+                index.save(file);
+            }
+            mSearchIndices.put(file, index);
+        }
+        return index;
+    }
+
+    //endregion
+
     //region Static repository listing
 
     public static ArrayList<RepoHandler> listRepositories(final File workDir, final File cacheDir) {
@@ -501,6 +734,12 @@ public class RepoHandler implements Comparable<RepoHandler> {
         return mSourceSettings.getName();
     }
 
+    // The branch the repository was last synced from, or null if unknown (or not using git)
+    public String getGitBranch() {
+        return mSourceSettings.getName().equals("git") ?
+                GitSource.getBranch(mSourceSettings) : null;
+    }
+
     public boolean isGitHubRepository() {
         if (!mSourceSettings.getName().equals("git"))
             return false;
@@ -546,27 +785,22 @@ public class RepoHandler implements Comparable<RepoHandler> {
         }
     }
 
-    // Used to save the translation progress, calculated on the
-    // TranslateActivity, to quickly reuse it on the history screen
-    public boolean saveProgress(RepoProgress progress) {
-        try {
-            return FileUtils.writeFile(mProgressFile, progress.toJson().toString());
-        } catch (JSONException e) {
-            e.printStackTrace();
-            return false;
-        }
+    // The progress of the last locale translated, as it was then (cheap, for lists)
+    public RepoProgress loadProgress() {
+        return mProgressTracker.getLastProgress();
     }
 
-    // Gets the progress of the last calculated progress locale
-    public RepoProgress loadProgress() {
-        try {
-            final String json = FileUtils.readTextFile(mProgressFile);
-            if (!json.isEmpty())
-                return RepoProgress.fromJson(new JSONObject(json));
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return null;
+    public RepoProgress getProgress(final String locale) {
+        return mProgressTracker.getProgress(locale);
+    }
+
+    public LinkedHashMap<String, RepoProgress> getAllProgress() {
+        return mProgressTracker.getAllProgress();
+    }
+
+    // Keeps the progress of the locale up to date while its resources are modified and saved
+    public void trackProgress(final String locale, final Resources resources) {
+        mProgressTracker.track(locale, resources);
     }
 
     //endregion
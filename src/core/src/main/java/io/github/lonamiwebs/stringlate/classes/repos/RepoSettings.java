@@ -1,7 +1,5 @@
 package io.github.lonamiwebs.stringlate.classes.repos;
 
-import net.gsantner.opoc.util.FileUtils;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -11,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 
+import io.github.lonamiwebs.stringlate.classes.SettingsStore;
 import io.github.lonamiwebs.stringlate.classes.sources.SourceSettings;
 
 // We can't quite save the SharedPreferences in a custom path so… use JSON (easier than XML)
@@ -18,7 +17,7 @@ public class RepoSettings {
 
     private static final String FILENAME = "settings.json";
     private final File mSettingsFile;
-    private JSONObject mSettings;
+    private final SettingsStore mStore;
 
     private static final String KEY_SOURCE = "source";
     private static final String KEY_PROJECT_WEB_URL = "project_homepage_url";
@@ -38,22 +37,22 @@ public class RepoSettings {
 
     public RepoSettings(final File repoDir) {
         mSettingsFile = new File(repoDir, FILENAME);
-        mSettings = load();
+        mStore = SettingsStore.forFile(mSettingsFile);
     }
 
     //endregion
 
     // TODO Remove by version 1.0 or so
     public void checkUpgradeSettingsToSpecific(final SourceSettings sourceSettings) {
-        if (mSettings.has("git_url")) {
+        if (mStore.get().has("git_url")) {
             // Name change: "git_url" -> "source"
-            setSource(mSettings.optString("git_url", ""));
+            setSource(mStore.get().optString("git_url", ""));
 
             // Location change: RepoSettings -> git-specific SourceSettings (all if upgrading)
-            sourceSettings.set("translation_service", mSettings.optString("translation_service"));
+            sourceSettings.set("translation_service", mStore.get().optString("translation_service"));
             try {
                 final ArrayList<String> branchesArray = new ArrayList<>();
-                JSONArray branches = mSettings.optJSONArray("remote_branches");
+                JSONArray branches = mStore.get().optJSONArray("remote_branches");
                 if (branches != null) {
                     for (int i = 0; i < branches.length(); ++i) {
                         branchesArray.add(branches.getString(i));
@@ -63,38 +62,37 @@ public class RepoSettings {
             } catch (JSONException ignored) {
             }
 
-            mSettings.remove("git_url");
-            mSettings.remove("translation_service");
-            mSettings.remove("remote_branches");
-            save();
+            mStore.remove("git_url");
+            mStore.remove("translation_service");
+            mStore.remove("remote_branches");
         }
     }
 
     //region Getters
 
     public String getSource() {
-        return mSettings.optString(KEY_SOURCE, "");
+        return mStore.get().optString(KEY_SOURCE, "");
     }
 
     public String getProjectWebUrl() {
-        return mSettings.optString(KEY_PROJECT_WEB_URL, getSource());
+        return mStore.get().optString(KEY_PROJECT_WEB_URL, getSource());
     }
 
     public String getProjectName() {
-        return mSettings.optString(KEY_PROJECT_NAME, DEFAULT_PROJECT_NAME);
+        return mStore.get().optString(KEY_PROJECT_NAME, DEFAULT_PROJECT_NAME);
     }
 
     public String getProjectMail() {
-        return mSettings.optString(KEY_PROJECT_MAIL, DEFAULT_PROJECT_MAIL);
+        return mStore.get().optString(KEY_PROJECT_MAIL, DEFAULT_PROJECT_MAIL);
     }
 
     public String getLastLocale() {
-        return mSettings.optString(KEY_LAST_LOCALE, DEFAULT_LAST_LOCALE);
+        return mStore.get().optString(KEY_LAST_LOCALE, DEFAULT_LAST_LOCALE);
     }
 
     public HashMap<String, String> getRemotePaths() {
         HashMap<String, String> map = new HashMap<>();
-        JSONObject json = mSettings.optJSONObject(KEY_REMOTE_PATHS);
+        JSONObject json = mStore.get().optJSONObject(KEY_REMOTE_PATHS);
         if (json != null) {
             try {
                 Iterator<String> keysItr = json.keys();
@@ -113,7 +111,7 @@ public class RepoSettings {
     }
 
     public File getIconFile() {
-        String path = mSettings.optString(KEY_ICON_PATH, "");
+        String path = mStore.get().optString(KEY_ICON_PATH, "");
         if (path.isEmpty())
             return null;
 
@@ -122,13 +120,13 @@ public class RepoSettings {
     }
 
     public String getStringFilter() {
-        return mSettings.optString(KEY_SEARCH_FILTER, "");
+        return mStore.get().optString(KEY_SEARCH_FILTER, "");
     }
 
     // HashMap<Locale string, GitHub issue number>
     public HashMap<String, Integer> getCreatedIssues() {
         HashMap<String, Integer> map = new HashMap<>();
-        JSONObject json = mSettings.optJSONObject(KEY_CREATED_ISSUES);
+        JSONObject json = mStore.get().optJSONObject(KEY_CREATED_ISSUES);
         if (json != null) {
             try {
                 Iterator<String> keysItr = json.keys();
@@ -147,104 +145,63 @@ public class RepoSettings {
     //region Setters
 
     public void setSource(final String source) {
-        try {
-            mSettings.put(KEY_SOURCE, source);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_SOURCE, source);
     }
 
     public void setProjectWebUrl(final String homepageUrl) {
-        try {
-            mSettings.put(KEY_PROJECT_WEB_URL, homepageUrl);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_PROJECT_WEB_URL, homepageUrl);
     }
 
     public void setProjectName(final String projectName) {
-        try {
-            mSettings.put(KEY_PROJECT_NAME, projectName);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_PROJECT_NAME, projectName);
     }
 
     public void setProjectMail(final String projectMail) {
-        try {
-            mSettings.put(KEY_PROJECT_MAIL, projectMail);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_PROJECT_MAIL, projectMail);
     }
 
     public void setLastLocale(String locale) {
-        try {
-            mSettings.put(KEY_LAST_LOCALE, locale);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_LAST_LOCALE, locale);
     }
 
     public void addRemotePath(String filename, String remotePath) {
-        try {
-            HashMap<String, String> map = getRemotePaths();
-            map.put(filename, remotePath);
-            mSettings.put(KEY_REMOTE_PATHS, new JSONObject(map));
-        } catch (JSONException ignored) {
-        }
-        save();
+        HashMap<String, String> map = getRemotePaths();
+        map.put(filename, remotePath);
+        mStore.put(KEY_REMOTE_PATHS, new JSONObject(map));
     }
 
     public void clearRemotePaths() {
-        mSettings.remove(KEY_REMOTE_PATHS);
+        mStore.remove(KEY_REMOTE_PATHS);
     }
 
     public void setIconFile(File file) {
-        try {
-            mSettings.put(KEY_ICON_PATH, file == null ? "" : file.getAbsolutePath());
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_ICON_PATH, file == null ? "" : file.getAbsolutePath());
     }
 
     public void setStringFilter(final String filter) {
         if (filter == null)
             throw new IllegalArgumentException();
-        try {
-            mSettings.put(KEY_SEARCH_FILTER, filter);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_SEARCH_FILTER, filter);
     }
 
     public void addCreatedIssue(String locale, int issueNumber) {
-        try {
-            HashMap<String, Integer> map = getCreatedIssues();
-            map.put(locale, issueNumber);
-            mSettings.put(KEY_CREATED_ISSUES, new JSONObject(map));
-        } catch (JSONException ignored) {
-        }
-        save();
+        HashMap<String, Integer> map = getCreatedIssues();
+        map.put(locale, issueNumber);
+        mStore.put(KEY_CREATED_ISSUES, new JSONObject(map));
     }
 
     //endregion
 
     //region Load/save
 
-    private JSONObject load() {
-        try {
-            final String json = FileUtils.readTextFile(mSettingsFile);
-            if (!json.isEmpty())
-                return new JSONObject(json);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return new JSONObject();
+    // Settings are written a short while after they change, flush() writes them now
+    public boolean flush() {
+        return mStore.flush();
     }
 
-    public boolean save() {
-        return FileUtils.writeFile(mSettingsFile, mSettings.toString());
+    // Forgets the changes not written yet, and any later ones
+    public void discard() {
+        mStore.discard();
     }
 
     //endregion
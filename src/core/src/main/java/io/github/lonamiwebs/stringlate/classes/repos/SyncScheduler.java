@@ -0,0 +1,278 @@
+package io.github.lonamiwebs.stringlate.classes.repos;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
+
+// Runs the synchronization of many repositories, a bounded amount of them at once,
+// and no more than a few against the same host (so that e.g. syncing everything
+// doesn't hammer GitHub). Requests for a repository which is already waiting or
+// being synchronized are merged, and those with higher priority are run first.
+public class SyncScheduler {
+
+    //region Constants
+
+    public static final int PRIORITY_LOW = 0; // E.g. refreshing everything in the background
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2; // The user is waiting for it
+
+    // "scheme://user@host…" or "user@host:path", the host is what matters
+    private static final Pattern HOST_PATTERN =
+            Pattern.compile("^(?:[\\w+.-]+://)?(?:[^@/]+@)?([^/:]+)");
+
+    //endregion
+
+    //region Sub classes
+
+    public interface Listener {
+        void onUpdate(RepoHandler which, int stage, float progress);
+
+        void onFinish(RepoHandler which, boolean okay);
+    }
+
+    private static class Request implements Comparable<Request> {
+        final RepoHandler repo;
+        final StringsSource source;
+        final int desiredIconDpi;
+        final String host;
+        final long order; // Requests with the same priority run in order of arrival
+        final ArrayList<Listener> listeners = new ArrayList<>(1);
+
+        int priority;
+        boolean running;
+        boolean cancelled;
+
+        Request(final RepoHandler repo, final StringsSource source, final int desiredIconDpi,
+                final int priority, final long order) {
+            this.repo = repo;
+            this.source = source;
+            this.desiredIconDpi = desiredIconDpi;
+            this.priority = priority;
+            this.order = order;
+            host = getHost(repo.settings.getSource());
+        }
+
+        @Override
+        public int compareTo(final Request o) {
+            if (priority != o.priority)
+                return priority > o.priority ? -1 : 1;
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
+        }
+    }
+
+    //endregion
+
+    //region Members
+
+    private final int mMaxRunning;
+    private final int mMaxRunningPerHost;
+    private final ExecutorService mExecutor;
+
+    // Guarded by this
+    private final PriorityQueue<Request> mPending = new PriorityQueue<>();
+    private final HashMap<File, Request> mRequests = new HashMap<>(); // Root -> pending or running
+    private final HashMap<String, Integer> mRunningPerHost = new HashMap<>();
+    private int mRunning;
+    private long mNextOrder;
+
+    //endregion
+
+    //region Constructors
+
+    public SyncScheduler(final int maxRunning, final int maxRunningPerHost) {
+        if (maxRunning < 1 || maxRunningPerHost < 1)
+            throw new IllegalArgumentException("At least one synchronization must be able to run");
+
+        mMaxRunning = maxRunning;
+        mMaxRunningPerHost = maxRunningPerHost;
+        mExecutor = Executors.newFixedThreadPool(maxRunning);
+    }
+
+    //endregion
+
+    //region Scheduling
+
+    // Schedules the repository to be synchronized from the given source. If it was
+    // already scheduled, the listener is added to the existing request (whose priority
+    // is raised if needed), and false is returned since the source won't be used.
+    public synchronized boolean schedule(final RepoHandler repo, final StringsSource source,
+                                         final int desiredIconDpi, final int priority,
+                                         final Listener listener) {
+        Request request = mRequests.get(repo.mRoot);
+        final boolean isNew = request == null;
+        if (isNew) {
+            repo.clearCancelled();
+            request = new Request(repo, source, desiredIconDpi, priority, mNextOrder++);
+            mRequests.put(repo.mRoot, request);
+            mPending.add(request);
+        } else if (!request.running && request.priority < priority) {
+            // The queue doesn't notice changes on its items, so add it again
+            mPending.remove(request);
+            request.priority = priority;
+            mPending.add(request);
+        }
+
+        if (listener != null)
+            request.listeners.add(listener);
+
+        dispatch();
+        return isNew;
+    }
+
+    // Starts as many pending requests as possible. Must be called holding the lock
+    private void dispatch() {
+        if (mRunning >= mMaxRunning)
+            return;
+
+        // The queue's iterator isn't sorted, and hosts may be busy, so take them all out
+        final ArrayList<Request> pending = new ArrayList<>(mPending.size());
+        while (!mPending.isEmpty())
+            pending.add(mPending.poll());
+
+        for (Request request : pending) {
+            final int hostRunning = getRunning(request.host);
+            if (mRunning < mMaxRunning && hostRunning < mMaxRunningPerHost) {
+                mRunning++;
+                mRunningPerHost.put(request.host, hostRunning + 1);
+                request.running = true;
+                start(request);
+            } else {
+                mPending.add(request);
+            }
+        }
+    }
+
+    private void start(final Request request) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean okay = false;
+                try {
+                    if (!isCancelled(request)) {
+                        okay = request.repo.syncResources(request.source, request.desiredIconDpi,
+                                new Messenger.OnSyncProgress() {
+                                    @Override
+                                    public void onUpdate(final int stage, final float progress) {
+                                        for (Listener listener : getListeners(request))
+                                            listener.onUpdate(request.repo, stage, progress);
+                                    }
+                                });
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    finish(request, okay);
+                }
+            }
+        });
+    }
+
+    private void finish(final Request request, final boolean okay) {
+        synchronized (this) {
+            mRunning--;
+            mRunningPerHost.put(request.host, getRunning(request.host) - 1);
+            mRequests.remove(request.repo.mRoot);
+            dispatch();
+        }
+        for (Listener listener : getListeners(request))
+            listener.onFinish(request.repo, okay);
+    }
+
+    private int getRunning(final String host) {
+        final Integer running = mRunningPerHost.get(host);
+        return running == null ? 0 : running;
+    }
+
+    private synchronized ArrayList<Listener> getListeners(final Request request) {
+        return new ArrayList<>(request.listeners);
+    }
+
+    private synchronized boolean isCancelled(final Request request) {
+        return request.cancelled;
+    }
+
+    //endregion
+
+    //region Querying and cancelling
+
+    // Determines whether the repository is waiting or being synchronized
+    public synchronized boolean isScheduled(final RepoHandler repo) {
+        return mRequests.containsKey(repo.mRoot);
+    }
+
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return mRunning;
+    }
+
+    // Cancels the synchronization of the repository, whether it was still waiting
+    // (then its listeners are told that it finished unsuccessfully) or running.
+    // Returns false if the repository wasn't scheduled at all.
+    public boolean cancel(final RepoHandler repo) {
+        final Request request;
+        synchronized (this) {
+            request = mRequests.get(repo.mRoot);
+            if (request == null)
+                return false;
+
+            request.cancelled = true;
+            if (request.running) {
+                // The source may not be syncing yet, so also cancel it directly
+                request.source.cancel();
+                request.repo.cancel();
+                return true;
+            }
+
+            mPending.remove(request);
+            mRequests.remove(repo.mRoot);
+        }
+        request.repo.cancel(); // So that it knows it was cancelled
+        for (Listener listener : getListeners(request))
+            listener.onFinish(request.repo, false);
+
+        return true;
+    }
+
+    public void cancelAll() {
+        final ArrayList<RepoHandler> repos = new ArrayList<>();
+        synchronized (this) {
+            for (Request request : mRequests.values())
+                repos.add(request.repo);
+        }
+        for (RepoHandler repo : repos)
+            cancel(repo);
+    }
+
+    // Cancels everything and stops accepting new requests
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    //endregion
+
+    //region Utilities
+
+    // Returns the lower-cased host for the given source URL, or "" if it can't be told
+    static String getHost(final String url) {
+        if (url == null)
+            return "";
+
+        final Matcher m = HOST_PATTERN.matcher(url.trim());
+        return m.find() ? m.group(1).toLowerCase(Locale.ENGLISH) : "";
+    }
+
+    //endregion
+}
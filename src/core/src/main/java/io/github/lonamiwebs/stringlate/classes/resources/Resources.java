@@ -11,6 +11,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -18,6 +19,9 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.IdPool;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResPlurals;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResStringArray;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
@@ -28,29 +32,78 @@ public class Resources implements Iterable<ResTag> {
 
     //region Members
 
+    private static final Metrics.Timer PARSE_TIMER = Metrics.timer("resources.parse");
+    private static final Metrics.Counter PARSE_BYTES = Metrics.counter("resources.parse.bytes");
+    private static final Metrics.Counter PARSE_TAGS = Metrics.counter("resources.parse.tags");
+    private static final Metrics.Histogram PARSE_FILE_SIZES = Metrics.histogram("resources.parse.file_bytes");
+    private static final Metrics.Counter SNAPSHOT_HITS = Metrics.counter("resources.snapshot.hits");
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("resources.save");
+
     private final File mFile; // Keep track of the original file to be able to save()
+    private final IdPool mIdPool; // Shared by all the Resources of the same repository
     private final HashMap<String, ResTag> mStrings;
     private final HashMap<String, ResTag> mReferenceStrings; // Those starting with "@string/"
+    private final HashMap<String, ArrayList<ResTag>> mChildren; // Parent ID -> items on mStrings
 
     private ResTag mLastTag; // The last tag returned by getTag()
+    private OnChangeListener mListener;
 
     private boolean mSavedChanges;
     private boolean mModified;
 
+    // Notified when strings are added or removed (but not when their content changes,
+    // or while they're being loaded) and when the resources are saved
+    public interface OnChangeListener {
+        void onTagAdded(String id);
+
+        void onTagRemoved(String id);
+
+        void onSaved();
+    }
+
     //endregion
 
     //region Constructors
 
     public static Resources fromFile(final File file) {
-        Resources result = new Resources(file);
+        return fromFile(file, new IdPool(), false);
+    }
 
-        if (file.isFile()) {
+    public static Resources fromFile(final File file, final IdPool idPool) {
+        return fromFile(file, idPool, false);
+    }
+
+    // Snapshots should only be used for the files of our repositories, not for those
+    // which are thrown away or aren't ours (e.g. a checkout being synchronized)
+    public static Resources fromFile(final File file, final IdPool idPool, final boolean useSnapshot) {
+        Resources result = new Resources(file, idPool);
+
+        if (!file.isFile())
+            return result;
+
+        // Parsing the XML is slow, so try loading the snapshot we saved last time first
+        if (useSnapshot && ResourcesSnapshot.load(file, result, idPool)) {
+            SNAPSHOT_HITS.increment();
+        } else {
             InputStream is = null;
             try {
+                // Get these before reading, so that if it changes meanwhile the snapshot is outdated
+                final long lastModified = file.lastModified();
+                final long length = file.length();
+
+                final long start = Metrics.start();
                 is = new FileInputStream(file);
                 // Load the resources from the XML into our resulting Resources
                 final XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
                 ResourcesParser.loadFromXml(is, result, parser);
+                final ArrayList<ResTag> loaded = result.getLoadedTags();
+                PARSE_TIMER.stop(start);
+                PARSE_BYTES.add(length);
+                PARSE_FILE_SIZES.record(length);
+                PARSE_TAGS.add(loaded.size());
+
+                if (useSnapshot)
+                    ResourcesSnapshot.save(file, lastModified, length, loaded);
             } catch (IOException | XmlPullParserException e) {
                 e.printStackTrace();
             } finally {
@@ -68,13 +121,15 @@ public class Resources implements Iterable<ResTag> {
 
     // Empty resources cannot be saved
     public static Resources empty() {
-        return new Resources(null);
+        return new Resources(null, new IdPool());
     }
 
-    private Resources(File file) {
+    private Resources(File file, IdPool idPool) {
         mFile = file;
+        mIdPool = idPool;
         mStrings = new HashMap<>();
         mReferenceStrings = new HashMap<>();
+        mChildren = new HashMap<>();
         mSavedChanges = mFile != null && mFile.isFile();
     }
 
@@ -82,6 +137,27 @@ public class Resources implements Iterable<ResTag> {
 
     //region Getting content
 
+    public void setOnChangeListener(final OnChangeListener listener) {
+        mListener = listener;
+    }
+
+    IdPool getIdPool() {
+        return mIdPool;
+    }
+
+    // Every tag but those referencing other strings
+    Collection<ResTag> getStrings() {
+        return mStrings.values();
+    }
+
+    // Every tag as it was loaded, including those referencing other strings
+    private ArrayList<ResTag> getLoadedTags() {
+        final ArrayList<ResTag> result = new ArrayList<>(mStrings.size() + mReferenceStrings.size());
+        result.addAll(mStrings.values());
+        result.addAll(mReferenceStrings.values());
+        return result;
+    }
+
     public int count() {
         return mStrings.size();
     }
@@ -106,24 +182,26 @@ public class Resources implements Iterable<ResTag> {
 
         mLastTag = mStrings.get(resourceId);
         if (mLastTag == null && !resourceId.contains(":")) {
-            // We might be looking for a parent string, not the ResTag itself
-            // This is a fallback to the slightly slower method
-            for (Map.Entry<String, ResTag> srt : mStrings.entrySet()) {
-                ResTag rt = srt.getValue();
-
-                if (rt instanceof ResStringArray.Item) {
-                    if (((ResStringArray.Item) rt).getParent().getId().equals(resourceId))
-                        return mLastTag = rt;
-                } else if (rt instanceof ResPlurals.Item) {
-                    if (((ResPlurals.Item) rt).getParent().getId().equals(resourceId))
-                        return mLastTag = rt;
-                }
-            }
+            // We might be looking for a parent string, not the ResTag itself,
+            // in which case any of its children will do
+            final ArrayList<ResTag> children = mChildren.get(resourceId);
+            if (children != null)
+                mLastTag = children.get(0);
         }
 
         return mLastTag;
     }
 
+    // Returns the ID of the parent string-array or plurals, or null if it's not an item
+    private static String getParentId(final ResTag rt) {
+        if (rt instanceof ResStringArray.Item)
+            return ((ResStringArray.Item) rt).getParent().getId();
+        else if (rt instanceof ResPlurals.Item)
+            return ((ResPlurals.Item) rt).getParent().getId();
+        else
+            return null;
+    }
+
     // Determines whether the resource ID was modified or not
     // If this resource ID doesn't exist, then it obviously wasn't modified
     public boolean wasModified(String resourceId) {
@@ -167,8 +245,14 @@ public class Resources implements Iterable<ResTag> {
                     // The parent existed, so add the new string to it, and the
                     // resulting new string to our local array of children
                     ResStringArray parent = existingChild.getParent();
-                    ResTag newItem = parent.addItem(content, true, ori.getIndex());
-                    mStrings.put(newItem.getId(), newItem);
+                    ResTag newItem = parent.getItem(ori.getIndex());
+                    if (newItem == null) {
+                        newItem = parent.addItem(content, true, ori.getIndex());
+                    } else {
+                        // The parent still has the item (it was deleted only from our strings)
+                        newItem.setContent(content);
+                    }
+                    putTag(newItem);
                     handled = true;
                 } // else the parent didn't exist, so behave as the general case
 
@@ -182,21 +266,22 @@ public class Resources implements Iterable<ResTag> {
                     // resulting new string to our local array of children
                     ResPlurals parent = existingChild.getParent();
                     ResTag newItem = parent.addItem(ori.getQuantity(), content, true);
-                    mStrings.put(newItem.getId(), newItem);
+                    putTag(newItem);
                     handled = true;
                 } // else the parent didn't exist, so behave as the general case
             }
             if (!handled) {
-                ResTag clone = original.clone(content);
-                mStrings.put(clone.getId(), clone);
+                putTag(original.clone(content));
             }
             mSavedChanges = false;
         }
     }
 
     public void addTag(ResTag rt) {
-        // If it's null, there was no old value, so changes won't not saved
-        if (mStrings.put(rt.getId(), rt) == null)
+        // Unless the very same tag was there, something changed (a new or different value)
+        final ResTag old = putTag(rt);
+        if (old == null || old != rt && (!old.getContent().equals(rt.getContent()) ||
+                old.wasModified() != rt.wasModified()))
             mSavedChanges = false;
     }
 
@@ -205,17 +290,56 @@ public class Resources implements Iterable<ResTag> {
         if (rt.getContent().startsWith("@"))
             mReferenceStrings.put(rt.getId(), rt);
         else
-            mStrings.put(rt.getId(), rt);
+            putTag(rt);
 
         mModified |= rt.wasModified();
     }
 
+    // Puts the tag on mStrings keeping the children index up to date, returns the old tag
+    private ResTag putTag(final ResTag rt) {
+        final ResTag old = mStrings.put(rt.getId(), rt);
+        if (old != null)
+            unindexChild(old);
+        else if (mListener != null)
+            mListener.onTagAdded(rt.getId());
+
+        final String parentId = getParentId(rt);
+        if (parentId != null) {
+            ArrayList<ResTag> children = mChildren.get(parentId);
+            if (children == null) {
+                children = new ArrayList<>(4);
+                mChildren.put(parentId, children);
+            }
+            children.add(rt);
+        }
+        return old;
+    }
+
+    private void unindexChild(final ResTag rt) {
+        final String parentId = getParentId(rt);
+        if (parentId != null) {
+            final ArrayList<ResTag> children = mChildren.get(parentId);
+            if (children != null) {
+                // Items don't override equals(), so this is removed by identity
+                children.remove(rt);
+                if (children.isEmpty())
+                    mChildren.remove(parentId);
+            }
+        }
+    }
+
     //endregion
 
     //region Deleting content
 
     public void deleteId(String resourceId) {
-        mStrings.remove(resourceId);
+        final ResTag removed = mStrings.remove(resourceId);
+        if (removed != null) {
+            unindexChild(removed);
+            mSavedChanges = false;
+            if (mListener != null)
+                mListener.onTagRemoved(resourceId);
+        }
         if (mLastTag != null && mLastTag.getId().equals(resourceId))
             mLastTag = null;
     }
@@ -242,26 +366,62 @@ public class Resources implements Iterable<ResTag> {
         if (mFile == null)
             return false;
 
+        final long start = Metrics.start();
         try {
-            if (!mFile.getParentFile().isDirectory())
-                mFile.getParentFile().mkdirs();
+            // The search index is only valid for the file as it is now, so load it before saving
+            final SearchIndex previousIndex = SearchIndex.load(mFile);
 
-            FileOutputStream out = new FileOutputStream(mFile);
+            // If anything goes wrong, the file is left as it was (rather than half written)
             final XmlSerializer serializer = XmlPullParserFactory.newInstance().newSerializer();
-            mSavedChanges = ResourcesParser.parseToXml(this, out, serializer);
+            final AtomicFile atomicFile = new AtomicFile(mFile);
+            final FileOutputStream out = atomicFile.startWrite();
+            if (ResourcesParser.parseToXml(this, out, serializer))
+                mSavedChanges = atomicFile.finishWrite(out);
+            else
+                atomicFile.failWrite(out);
             mModified = true;
-            out.close();
+
+            // The snapshot is outdated now, and it will be saved again once loaded
+            ResourcesSnapshot.delete(mFile);
+
+            // Most strings didn't change, so the index is updated rather than built again.
+            // If there was none, it's not built until something is searched for.
+            if (previousIndex != null && mSavedChanges && mFile.length() != 0)
+                SearchIndex.build(mFile, previousIndex, mStrings.values()).save(mFile);
+            else
+                SearchIndex.delete(mFile);
+
+            if (TranslationLookup.exists(mFile)) {
+                if (mSavedChanges && mFile.length() != 0)
+                    TranslationLookup.save(mFile, mStrings.values());
+                else
+                    TranslationLookup.delete(mFile);
+            }
         } catch (IOException | XmlPullParserException e) {
             e.printStackTrace();
         }
-        // We do not want empty files, if it exists and it's empty delete it
-        if (mFile.isFile() && mFile.length() == 0)
+        // We do not want empty files (older versions may have left some), delete them
+        if (mFile.isFile() && mFile.length() == 0) {
             mFile.delete();
+            SearchIndex.delete(mFile);
+            TranslationLookup.delete(mFile);
+        }
+
+        SAVE_TIMER.stop(start);
+        if (mSavedChanges && mListener != null)
+            mListener.onSaved();
 
-        return mFile.isFile();
+        // The file may still be there if saving failed (as it was before), so check both
+        return mSavedChanges && mFile.isFile();
     }
 
     public boolean delete() {
+        if (mFile != null) {
+            ResourcesSnapshot.delete(mFile);
+            SearchIndex.delete(mFile);
+            TranslationLookup.delete(mFile);
+        }
+
         boolean ok = mFile != null && mFile.delete();
         if (ok) {
             // If the directory is empty, delete it too
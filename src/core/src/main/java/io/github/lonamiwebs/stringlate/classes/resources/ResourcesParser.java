@@ -7,14 +7,16 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -22,6 +24,8 @@ import java.util.Queue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.IdPool;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResPlurals;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResString;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResStringArray;
@@ -95,16 +99,16 @@ public class ResourcesParser {
             String name = parser.getName();
             switch (ResType.fromTagName(name)) {
                 case STRING:
-                    ResTag rt = readResourceString(parser);
+                    ResTag rt = readResourceString(parser, resources.getIdPool());
                     if (rt != null)
                         resources.loadTag(rt);
                     break;
                 case STRING_ARRAY:
-                    for (ResTag item : readResourceStringArray(parser))
+                    for (ResTag item : readResourceStringArray(parser, resources.getIdPool()))
                         resources.loadTag(item);
                     break;
                 case PLURALS:
-                    for (ResTag item : readResourcePlurals(parser))
+                    for (ResTag item : readResourcePlurals(parser, resources.getIdPool()))
                         resources.loadTag(item);
                     break;
                 default:
@@ -116,7 +120,7 @@ public class ResourcesParser {
 
     // Reads a <string name="...">...</string> tag from the xml.
     // This assumes that the .xml has been cleaned (i.e. there are no untranslatable strings)
-    private static ResString readResourceString(XmlPullParser parser)
+    private static ResString readResourceString(XmlPullParser parser, IdPool idPool)
             throws XmlPullParserException, IOException {
 
         String id, content;
@@ -140,11 +144,12 @@ public class ResourcesParser {
         if (id == null || content.isEmpty())
             return null;
         else
-            return new ResString(ResType.STRING.markID(id), content, modified);
+            return new ResString(idPool.intern(ResType.STRING.markID(id)), content, modified);
     }
 
     // Reads a <string-array name="...">...</string-array> tag from the xml.
-    private static Iterable<ResStringArray.Item> readResourceStringArray(XmlPullParser parser)
+    private static Iterable<ResStringArray.Item> readResourceStringArray(XmlPullParser parser,
+                                                                         IdPool idPool)
             throws XmlPullParserException, IOException {
 
         ResStringArray result;
@@ -162,7 +167,7 @@ public class ResourcesParser {
             return new ArrayList<>();
         } else {
             id = parser.getAttributeValue(null, ID);
-            result = new ResStringArray(ResType.STRING_ARRAY.markID(id));
+            result = new ResStringArray(ResType.STRING_ARRAY.markID(id), idPool);
 
             while (parser.next() != XmlPullParser.END_TAG) {
                 if (parser.getEventType() != XmlPullParser.START_TAG)
@@ -187,7 +192,8 @@ public class ResourcesParser {
     }
 
     // Reads a <string-array name="...">...</string-array> tag from the xml.
-    private static Iterable<ResPlurals.Item> readResourcePlurals(XmlPullParser parser)
+    private static Iterable<ResPlurals.Item> readResourcePlurals(XmlPullParser parser,
+                                                                 IdPool idPool)
             throws XmlPullParserException, IOException {
 
         ResPlurals result;
@@ -205,7 +211,7 @@ public class ResourcesParser {
             return new ArrayList<>();
         } else {
             id = parser.getAttributeValue(null, ID);
-            result = new ResPlurals(ResType.PLURALS.markID(id));
+            result = new ResPlurals(ResType.PLURALS.markID(id), idPool);
 
             while (parser.next() != XmlPullParser.END_TAG) {
                 if (parser.getEventType() != XmlPullParser.START_TAG)
@@ -391,14 +397,18 @@ public class ResourcesParser {
         serializer.startTag(ns, ResType.STRING_ARRAY.toString());
         serializer.attribute(ns, ID, ResType.resolveID(array.getId()));
 
+        int nextIndex = 0;
         for (ResStringArray.Item item : array.expand()) {
             serializer.startTag(ns, ResType.ITEM.toString());
             if (item.wasModified() != DEFAULT_MODIFIED)
                 serializer.attribute(ns, MODIFIED, Boolean.toString(item.wasModified()));
 
-            // We MUST save the index because the user might have
-            // translated first the non-first item from the array. Darn it!
-            serializer.attribute(ns, INDEX, Integer.toString(item.getIndex()));
+            // We MUST save the index if there are gaps because the user might have
+            // translated first the non-first item from the array. Darn it! Items are
+            // in order, so otherwise the index will be auto-detected when loading.
+            if (item.getIndex() != nextIndex)
+                serializer.attribute(ns, INDEX, Integer.toString(item.getIndex()));
+            nextIndex = item.getIndex() + 1;
             serializer.text(ResTag.sanitizeContent(item.getContent()));
             serializer.endTag(ns, ResType.ITEM.toString());
         }
@@ -456,28 +466,29 @@ public class ResourcesParser {
                 }
             }
 
-            // TODO The rest of code is copied from cleanMissingStrings I only change one part…
+            // TODO This could also be done in a single pass with the TemplateScanner
             // There are no translatable strings, so do nothing (and don't create any file)
             if (!haveAny)
                 return false;
 
             // There is at least one translatable string, so we need to clean the xml
-            if (!outFile.getParentFile().isDirectory())
-                outFile.getParentFile().mkdirs();
-
-            FileOutputStream out = new FileOutputStream(outFile);
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
-
-            // We might want to early terminate if all strings are translatable
-            if (dirtyRanges.isEmpty()) {
-                // Simply copy the file, there's nothing to clean
-                writer.write(xml);
-                writer.close();
-                return true;
+            final AtomicFile atomicFile = new AtomicFile(outFile);
+            final FileOutputStream out = atomicFile.startWrite();
+            try {
+                // We might want to early terminate if all strings are translatable
+                if (dirtyRanges.isEmpty()) {
+                    // Simply copy the file, there's nothing to clean
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
+                    writer.write(xml);
+                    writer.flush();
+                } else {
+                    removeDirtyRanges(xml, dirtyRanges, out);
+                }
+            } catch (IOException e) {
+                atomicFile.failWrite(out);
+                throw e;
             }
-
-            removeDirtyRanges(xml, dirtyRanges, out);
-            return true;
+            return atomicFile.finishWrite(out);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
@@ -509,20 +520,6 @@ public class ResourcesParser {
         }
     }
 
-    // Replacement holder - on the original xml (the "template")
-    // there will exist several of these to indicate where the
-    // replacements should be made
-    private static class ReplaceHolder {
-        final int start, end;
-        final String replacement;
-
-        ReplaceHolder(int start, int end, String replacement) {
-            this.start = start;
-            this.end = end;
-            this.replacement = replacement;
-        }
-    }
-
     private static String getAttr(String attrs, String... attrNames) {
         Matcher m = ATTRIBUTE_PATTERN.matcher(attrs);
         while (m.find()) {
@@ -542,143 +539,279 @@ public class ResourcesParser {
         return true;
     }
 
-    // Will return an empty string if there is no available translation
-    private static String cleanMissingStrings(String xml, Resources resources) {
-        // TODO Ignore "<!-- <string name="missing">value</string> -->" comments?
-        // Maybe scan for comments and if a match is found inside a comment… Discard it?
-        // Or maybe it's just over complication.
-        boolean haveAny = false;
-
-        // 1. Find dirty tags (those which we have no translation for)
-        Queue<DirtyRange> dirtyRanges = new LinkedList<>();
-
-        Matcher mTag = RES_TAG_PATTERN.matcher(xml);
-        while (mTag.find()) {
-            String id = getAttr(mTag.group(2), ID);
-            if (resources.contains(id)) {
-                // This file contains at least one translation
-                haveAny = true;
-            } else {
-                // We don't have a translation, so this tag is dirty. Decrease
-                // the range by 1 not to eat up the next character (due to the i++)
-                dirtyRanges.add(new DirtyRange(mTag.start(), mTag.end() - 1));
+    // Writes the template lines, removing those which became whitespace-only after removing
+    // the tags we have no translation for. The output is held back until we know we have at
+    // least one translation, because otherwise nothing should be written at all.
+    //
+    // Note that once a dirty line is kept (it had something else besides the removed tags),
+    // no other dirty line will be removed, and that trailing empty lines are only removed if
+    // some tag was. This is how it has always behaved, and the output must not change.
+    private static class TemplateWriter {
+        private final Writer mOut;
+        private final StringBuilder mHeld = new StringBuilder();
+        private boolean mHolding = true;
+
+        private final StringBuilder mLine = new StringBuilder();
+        private boolean mLineBlank = true; // Whether the line is whitespace on the template
+        private boolean mLineDirty; // Whether a tag was removed from this line
+        private int mEmptyLines; // Empty lines not written yet, since they may be trailing
+
+        private boolean mAnyDirty;
+        private boolean mKeepDirty;
+
+        TemplateWriter(final Writer out) {
+            mOut = out;
+        }
+
+        void literal(final String text) throws IOException {
+            for (int i = 0; i < text.length(); ++i) {
+                final char c = text.charAt(i);
+                if (c == '\n') {
+                    endLine();
+                } else {
+                    mLine.append(c);
+                    if (mLineBlank && !Character.isWhitespace(c))
+                        mLineBlank = false;
+                }
             }
         }
 
-        // There is no string we have a translation for, so return an empty string
-        if (!haveAny)
-            return "";
+        void removed() {
+            mLineDirty = true;
+            mAnyDirty = true;
+        }
 
-        // We might want to early terminate if we have a translation for all the strings
-        if (dirtyRanges.isEmpty())
-            return xml;
+        void translated(final String xml) throws IOException {
+            if (mHolding) {
+                mHolding = false;
+                mOut.append(mHeld);
+                mHeld.setLength(0);
+            }
+            mLine.append(xml);
+            mLineBlank = false;
+        }
 
-        try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Returns TRUE if anything was written (there was at least one translation)
+        boolean finish() throws IOException {
+            if (mLine.length() != 0 || mLineDirty)
+                endLine();
+            if (!mAnyDirty)
+                writeEmptyLines();
 
-            // 2. Remove the dirty tags and mark those lines as dirty too
-            removeDirtyRanges(xml, dirtyRanges, output);
+            return !mHolding;
+        }
 
-            // Return the clean xml
-            return output.toString();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "";
+        private void endLine() throws IOException {
+            final boolean empty = mLine.length() == 0;
+            if (mLineDirty && !mKeepDirty) {
+                if (mLineBlank) {
+                    // Skip the line, but if it wasn't empty, the previous ones weren't trailing
+                    if (!empty)
+                        writeEmptyLines();
+
+                    resetLine();
+                    return;
+                }
+                mKeepDirty = true;
+            }
+
+            if (empty) {
+                mEmptyLines++;
+            } else {
+                writeEmptyLines();
+                getTarget().append(mLine).append('\n');
+            }
+            resetLine();
+        }
+
+        private void writeEmptyLines() throws IOException {
+            final Appendable target = getTarget();
+            for (; mEmptyLines != 0; --mEmptyLines)
+                target.append('\n');
+        }
+
+        private Appendable getTarget() {
+            return mHolding ? mHeld : mOut;
+        }
+
+        private void resetLine() {
+            mLine.setLength(0);
+            mLineBlank = true;
+            mLineDirty = false;
         }
     }
 
-    // This assumes a clean xml, i.e., we have a translation for all the strings in it
-    // Returns TRUE if there were no errors
-    private static boolean writeReplaceStrings(String xml, Resources resources, OutputStream out) {
-        // Match on the original xml to determine where replacements will be made
-        Matcher mTag = RES_TAG_PATTERN.matcher(xml);
+    // Compiles the tag the scanner is at into its literal parts and holes
+    private static TemplatePlan.Segment compileTag(final TemplateScanner tag, final String id)
+            throws IOException {
+        final String xml = tag.getText();
+        final ResType type = ResType.fromTagName(tag.getName());
+        if (id.isEmpty() || (type != ResType.STRING &&
+                type != ResType.STRING_ARRAY && type != ResType.PLURALS)) {
+            // case ResType.ITEM: // Should not be on the wild though
+            return new TemplatePlan.Segment(id, type, new String[]{xml}, new String[0]);
+        }
 
-        // Matches will be in order, so use a queue (first in, first out)
-        Queue<ReplaceHolder> holders = new LinkedList<>();
-        while (mTag.find()) {
-            int contentStart = mTag.start(3);
-            int contentEnd = contentStart + mTag.group(3).length();
+        final String head = xml.substring(0, tag.getContentStart());
+        final String tail = xml.substring(tag.getContentEnd());
+        if (type == ResType.STRING)
+            return new TemplatePlan.Segment(id, type, new String[]{head, tail}, new String[1]);
+
+        // Arrays and plurals have a hole for the content of each of their items
+        final ArrayList<String> parts = new ArrayList<>();
+        final ArrayList<String> holes = new ArrayList<>();
+        final StringBuilder part = new StringBuilder(head);
+
+        final TemplateScanner items =
+                new TemplateScanner(xml.substring(tag.getContentStart(), tag.getContentEnd()));
+        for (int token = items.next(); token != TemplateScanner.END; token = items.next()) {
+            final String itemXml = items.getText();
+            if (token == TemplateScanner.TAG && ResType.fromTagName(items.getName()) == ResType.ITEM) {
+                part.append(itemXml, 0, items.getContentStart());
+                parts.add(part.toString());
+                holes.add(type == ResType.PLURALS ? items.getAttr(QUANTITY) : null);
+
+                part.setLength(0);
+                part.append(itemXml, items.getContentEnd(), itemXml.length());
+            } else {
+                part.append(itemXml);
+            }
+        }
+        parts.add(part.append(tail).toString());
 
-            String id = getAttr(mTag.group(2), ID);
-            if (id.isEmpty())
-                continue;
+        return new TemplatePlan.Segment(id, type,
+                parts.toArray(new String[parts.size()]), holes.toArray(new String[holes.size()]));
+    }
 
-            // Should never fail - plus do we even care it's empty? No resource would be found
-            // Also, we obviously have this string translated (xml was cleaned, right?),
-            // thus there is no need to ensure whether we need to delete the line or not
-            ResType type = ResType.fromTagName(mTag.group(1));
-            ResTag tag = resources.getTag(type.markID(id));
-            Matcher mItem;
-            switch (type) {
-                case STRING:
-                    holders.add(new ReplaceHolder(contentStart, contentEnd,
-                            tag.getContent() == null ? "" : tag.getContent()));
-                    break;
+    // Fills the holes of a compiled tag with our translations
+    private static String fillTag(final TemplatePlan.Segment tag, final Resources resources) {
+        if (tag.mHoles.length == 0)
+            return tag.mParts[0];
+
+        final ResTag rt = resources.getTag(tag.mType.markID(tag.mId));
+        final ResStringArray array = rt instanceof ResStringArray.Item ?
+                ((ResStringArray.Item) rt).getParent() : null;
+        final ResPlurals plurals = rt instanceof ResPlurals.Item ?
+                ((ResPlurals.Item) rt).getParent() : null;
+
+        final StringBuilder sb = new StringBuilder(tag.mParts[0]);
+        for (int i = 0; i < tag.mHoles.length; ++i) {
+            // We might not have this content, but we wish to keep the order
+            final ResTag content;
+            switch (tag.mType) {
                 case STRING_ARRAY:
-                    ResStringArray array = ((ResStringArray.Item) tag).getParent();
-                    int i = 0;
-                    mItem = RES_TAG_PATTERN.matcher(mTag.group(3));
-                    while (mItem.find()) {
-                        if (ResType.fromTagName(mItem.group(1)) == ResType.ITEM) {
-                            // We must take the base offset (contentStart) into account…
-                            int cs = contentStart + mItem.start(3);
-                            int ce = cs + mItem.group(3).length();
-
-                            // We might not have this content, but we wish to keep the order
-                            ResStringArray.Item item = array.getItem(i);
-                            String content = item == null ? null : item.getContent();
-                            holders.add(new ReplaceHolder(cs, ce,
-                                    content == null ? "" : content));
-                            i++;
-                        }
-                    }
+                    content = array == null ? null : array.getItem(i);
                     break;
                 case PLURALS:
-                    ResPlurals plurals = ((ResPlurals.Item) tag).getParent();
-                    mItem = RES_TAG_PATTERN.matcher(mTag.group(3));
-                    while (mItem.find()) {
-                        if (ResType.fromTagName(mItem.group(1)) == ResType.ITEM) {
-                            String quantity = getAttr(mItem.group(2), QUANTITY);
-                            int cs = contentStart + mItem.start(3);
-                            int ce = cs + mItem.group(3).length();
-
-                            // We might not have this content, but we wish to keep the order
-                            ResPlurals.Item item = plurals.getItem(quantity);
-                            String content = item == null ? "" : item.getContent();
-                            holders.add(new ReplaceHolder(cs, ce, content));
-                        }
-                    }
+                    content = plurals == null ? null : plurals.getItem(tag.mHoles[i]);
+                    break;
+                default:
+                    content = rt;
                     break;
-                // case ResType.ITEM: break; // Should not be on the wild though
             }
+            final String text = content == null ? null : content.getContent();
+            sb.append(ResTag.sanitizeContent(text == null ? "" : text)).append(tag.mParts[i + 1]);
         }
+        return sb.toString();
+    }
 
-        // Write the result by applying the required replacements
-        PrintWriter writer = new PrintWriter(out);
-        ReplaceHolder holder = holders.poll();
-        for (int i = 0; i < xml.length(); i++) {
-            if (holder == null || i < holder.start) {
-                // There are no more holders left, simply copy the characters
-                writer.append(xml.charAt(i));
-            } else {
-                // We reached the current replacement holder
-                // Replace the original content with our new content
-                writer.append(ResTag.sanitizeContent(holder.replacement));
-                i = holder.end - 1; // Skip to the end of the tag
-                // Decrease the range by 1 not to eat up the next character (due to the i++)
+    // Returns the compiled template, or null if it could not be read
+    static TemplatePlan compileTemplate(final File template) {
+        // Get these before reading, so that if it changes meanwhile the plan will be outdated
+        final long lastModified = template.lastModified();
+        final long length = template.length();
 
-                holder = holders.poll(); // Next holder
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(template));
+            final ArrayList<TemplatePlan.Segment> segments = new ArrayList<>();
+            final TemplateScanner scanner = new TemplateScanner(reader);
+            for (int token = scanner.next(); token != TemplateScanner.END; token = scanner.next()) {
+                if (token == TemplateScanner.LITERAL)
+                    segments.add(TemplatePlan.Segment.literal(scanner.getText()));
+                else
+                    segments.add(compileTag(scanner, scanner.getAttr(ID)));
+            }
+            return new TemplatePlan(lastModified, length, segments);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
             }
         }
-        writer.close();
-        return !writer.checkError();
     }
 
-    // Returns TRUE if the template was applied successfully
+    // Returns TRUE if the template was applied successfully, which will be
+    // FALSE if there was no translation at all for the strings on the template.
+    //
+    // The template is processed as it's read, in a single pass. Tags we have no translation
+    // for are removed (along with their line if it's left empty), and the content of those
+    // we do have is replaced with our translation. The output stream is not closed.
     public static boolean applyTemplate(File template, Resources resources, OutputStream out) {
-        // The xml will be empty if we have no translation for this file.
-        String xml = cleanMissingStrings(FileUtils.readTextFile(template), resources);
-        return !xml.isEmpty() && writeReplaceStrings(xml, resources, out);
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(template));
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+            final TemplateWriter templateWriter = new TemplateWriter(writer);
+            final TemplateScanner scanner = new TemplateScanner(reader);
+
+            for (int token = scanner.next(); token != TemplateScanner.END; token = scanner.next()) {
+                if (token == TemplateScanner.LITERAL) {
+                    templateWriter.literal(scanner.getText());
+                    continue;
+                }
+
+                // TODO Ignore "<!-- <string name="missing">value</string> -->" comments?
+                final String id = scanner.getAttr(ID);
+                if (resources.contains(id))
+                    templateWriter.translated(fillTag(compileTag(scanner, id), resources));
+                else
+                    templateWriter.removed(); // We don't have a translation, so this tag is dirty
+            }
+
+            final boolean ok = templateWriter.finish();
+            writer.flush();
+            return ok;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Same as above, but using an already compiled template (which is way faster to fill)
+    public static boolean applyTemplate(TemplatePlan plan, Resources resources, OutputStream out) {
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+            final TemplateWriter templateWriter = new TemplateWriter(writer);
+
+            for (TemplatePlan.Segment segment : plan.mSegments) {
+                if (segment.isLiteral())
+                    templateWriter.literal(segment.mParts[0]);
+                else if (resources.contains(segment.mId))
+                    templateWriter.translated(fillTag(segment, resources));
+                else
+                    templateWriter.removed();
+            }
+
+            final boolean ok = templateWriter.finish();
+            writer.flush();
+            return ok;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     //endregion
@@ -750,7 +883,7 @@ public class ResourcesParser {
                 dirtyLine = dirtyLines.poll();
             }
         }
-        writer.close();
+        writer.flush(); // The output is closed by the caller
     }
 
     //endregion
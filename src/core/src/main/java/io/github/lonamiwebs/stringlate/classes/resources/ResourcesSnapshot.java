@@ -0,0 +1,270 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.IdPool;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResPlurals;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResString;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResStringArray;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Binary snapshot of the tags loaded from a strings.xml file, saved next to it so that
+// loading the same file again doesn't need to parse the XML and desanitize every tag.
+//
+// The XML file is still the source of truth. A snapshot is only used if the modification
+// time and size of the XML match those it was made from, and its checksum is right.
+//
+// The format is the header (magic, version, XML modification time and size, checksum of
+// the rest), a table with every distinct string, and one record per tag, referencing
+// the strings by their index on the table:
+//
+//   kind (byte), id or parent id (int), index or quantity (int), content (int), modified (byte)
+public class ResourcesSnapshot {
+
+    //region Constants
+
+    private static final String EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x534c5253; // "SLRS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    private static final byte KIND_STRING = 0;
+    private static final byte KIND_ARRAY_ITEM = 1;
+    private static final byte KIND_PLURALS_ITEM = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //endregion
+
+    //region Getters
+
+    static File getSnapshotFile(final File xmlFile) {
+        return new File(xmlFile.getParentFile(), xmlFile.getName() + EXTENSION);
+    }
+
+    public static boolean isSnapshotFile(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    //endregion
+
+    //region Loading
+
+    // Loads the snapshot for the given XML into the resources. If there's no valid
+    // snapshot, nothing is loaded and false is returned, so the XML should be parsed.
+    static boolean load(final File xmlFile, final Resources resources, final IdPool idPool) {
+        final File snapshotFile = getSnapshotFile(xmlFile);
+        if (!snapshotFile.isFile())
+            return false;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(snapshotFile);
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE ||
+                    buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+                    buffer.getLong() != xmlFile.lastModified() ||
+                    buffer.getLong() != xmlFile.length())
+                return false;
+
+            final int checksum = buffer.getInt();
+            if (checksum != checksum(buffer.slice()))
+                return false;
+
+            // Loading must be all-or-nothing, so don't touch the resources until the end
+            final String[] strings = new String[buffer.getInt()];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < strings.length; ++i) {
+                final int length = buffer.getInt();
+                if (bytes.length < length)
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, UTF8);
+            }
+
+            final HashMap<String, ResStringArray> arrays = new HashMap<>();
+            final HashMap<String, ResPlurals> plurals = new HashMap<>();
+            final int count = buffer.getInt();
+            final ArrayList<ResTag> tags = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final byte kind = buffer.get();
+                final String id = strings[buffer.getInt()];
+                final int extra = buffer.getInt();
+                final String content = strings[buffer.getInt()];
+                final boolean modified = buffer.get() != 0;
+
+                switch (kind) {
+                    case KIND_STRING:
+                        tags.add(new ResString(idPool.intern(id), content, modified));
+                        break;
+                    case KIND_ARRAY_ITEM:
+                        ResStringArray array = arrays.get(id);
+                        if (array == null) {
+                            array = new ResStringArray(id, idPool);
+                            arrays.put(id, array);
+                        }
+                        tags.add(array.addItem(content, modified, extra));
+                        break;
+                    case KIND_PLURALS_ITEM:
+                        ResPlurals plural = plurals.get(id);
+                        if (plural == null) {
+                            plural = new ResPlurals(id, idPool);
+                            plurals.put(id, plural);
+                        }
+                        tags.add(plural.addItem(strings[extra], content, modified));
+                        break;
+                    default:
+                        return false;
+                }
+            }
+
+            for (ResTag rt : tags)
+                resources.loadTag(rt);
+
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // A corrupt snapshot is no big deal, the XML will be parsed instead
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Saving and deleting
+
+    // Saves the snapshot for the tags which were just loaded from the given XML file
+    static boolean save(final File xmlFile, final long lastModified, final long length,
+                        final Iterable<ResTag> tags) {
+        final ArrayList<String> strings = new ArrayList<>();
+        final HashMap<String, Integer> stringIndices = new HashMap<>();
+
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(records);
+            int count = 0;
+            for (ResTag rt : tags) {
+                if (rt instanceof ResStringArray.Item) {
+                    final ResStringArray.Item item = (ResStringArray.Item) rt;
+                    out.writeByte(KIND_ARRAY_ITEM);
+                    out.writeInt(indexOf(item.getParent().getId(), strings, stringIndices));
+                    out.writeInt(item.getIndex());
+                } else if (rt instanceof ResPlurals.Item) {
+                    final ResPlurals.Item item = (ResPlurals.Item) rt;
+                    out.writeByte(KIND_PLURALS_ITEM);
+                    out.writeInt(indexOf(item.getParent().getId(), strings, stringIndices));
+                    out.writeInt(indexOf(item.getQuantity(), strings, stringIndices));
+                } else {
+                    out.writeByte(KIND_STRING);
+                    out.writeInt(indexOf(rt.getId(), strings, stringIndices));
+                    out.writeInt(-1);
+                }
+                out.writeInt(indexOf(rt.getContent(), strings, stringIndices));
+                out.writeByte(rt.wasModified() ? 1 : 0);
+                count++;
+            }
+
+            final DataOutputStream payloadOut = new DataOutputStream(payload);
+            payloadOut.writeInt(strings.size());
+            for (String string : strings) {
+                final byte[] bytes = string.getBytes(UTF8);
+                payloadOut.writeInt(bytes.length);
+                payloadOut.write(bytes);
+            }
+            payloadOut.writeInt(count);
+            records.writeTo(payloadOut);
+        } catch (IOException e) {
+            // Can't really happen when writing to memory
+            e.printStackTrace();
+            return false;
+        }
+
+        // Written apart and then renamed, so that a half written snapshot is never loaded
+        final byte[] bytes = payload.toByteArray();
+        final AtomicFile atomicFile = new AtomicFile(getSnapshotFile(xmlFile), false);
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = atomicFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lastModified);
+            out.writeLong(length);
+            out.writeInt(checksum(ByteBuffer.wrap(bytes)));
+            out.write(bytes);
+            out.flush();
+            return atomicFile.finishWrite(fileOut);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (fileOut != null)
+                atomicFile.failWrite(fileOut);
+            return false;
+        }
+    }
+
+    // Deletes the snapshot for the given XML file, if any. Returns false if it's still there
+    public static boolean delete(final File xmlFile) {
+        final File snapshotFile = getSnapshotFile(xmlFile);
+        return !snapshotFile.isFile() || snapshotFile.delete();
+    }
+
+    private static int indexOf(final String string, final ArrayList<String> strings,
+                               final HashMap<String, Integer> stringIndices) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndices.put(string, index);
+        }
+        return index;
+    }
+
+    //endregion
+
+    //region Checksum
+
+    // CRC32 of the remaining bytes of the buffer, which is left untouched
+    static int checksum(final ByteBuffer buffer) {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer view = buffer.duplicate();
+        if (view.hasArray()) {
+            crc.update(view.array(), view.arrayOffset() + view.position(), view.remaining());
+        } else {
+            final byte[] chunk = new byte[8192];
+            while (view.hasRemaining()) {
+                final int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    //endregion
+}
@@ -1,6 +1,7 @@
 package io.github.lonamiwebs.stringlate.classes.resources;
 
 import java.util.ArrayList;
+import java.util.Set;
 
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
 
@@ -19,31 +20,19 @@ public class ResourcesTranslation {
 
     //region Constructor
 
+    // Only the strings with an ID on matchingIds are used, unless it's null. These
+    // should be looked up with the RepoHandler.searchStrings() (to use its index)
     public static ArrayList<ResourcesTranslation> fromPairs(
-            Resources original, Resources translation, String filter) {
+            Resources original, Resources translation, Set<String> matchingIds) {
         String id;
         ArrayList<ResourcesTranslation> result = new ArrayList<>();
         if (original == null || translation == null)
             return result;
 
-        if (filter == null || filter.isEmpty()) {
-            for (ResTag rs : original) {
-                id = rs.getId();
+        for (ResTag rs : original) {
+            id = rs.getId();
+            if (matchingIds == null || matchingIds.contains(id))
                 result.add(new ResourcesTranslation(id, rs.getContent(), translation.getContent(id)));
-            }
-        } else {
-            String ori, trn;
-            filter = filter.toLowerCase();
-            for (ResTag rs : original) {
-                id = rs.getId();
-                ori = rs.getContent();
-                trn = translation.getContent(id);
-                if (id.toLowerCase().contains(filter) ||
-                        ori.toLowerCase().contains(filter) ||
-                        trn.toLowerCase().contains(filter)) {
-                    result.add(new ResourcesTranslation(id, ori, trn));
-                }
-            }
         }
         return result;
     }
@@ -0,0 +1,419 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import io.github.lonamiwebs.stringlate.classes.Metrics;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Inverted index of the strings on a strings.xml file, to find those whose ID or content
+// contain some text without lowercasing and scanning all of them on every keystroke.
+//
+// Every string is a document made of its lowercased ID and content, and every trigram
+// (three consecutive characters) maps to the sorted list of documents containing it.
+// Queries of three or more characters only look at the documents on the shortest list
+// of their trigrams, and shorter ones scan the (already lowercased) documents.
+//
+// Like the ResourcesSnapshot, it's saved next to the XML file and only used if the
+// modification time and size of the XML match. When the resources are saved, the index
+// is updated reusing the lists of the strings which didn't change. The format is the
+// header (magic, version, XML modification time and size, checksum of the rest), the
+// documents (ID and text), and the trigrams, each followed by its list of documents
+// (their count and the differences between consecutive ones, as variable length ints).
+public class SearchIndex {
+
+    //region Constants and members
+
+    // The query must be anywhere, or at the beginning of a word
+    public static final int MATCH_SUBSTRING = 0;
+    public static final int MATCH_WORD_PREFIX = 1;
+
+    private static final String EXTENSION = ".index";
+
+    private static final int MAGIC = 0x534c5349; // "SLSI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    // Separates the ID from the content on the documents, it won't be on any query
+    private static final char SEPARATOR = '\0';
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Metrics.Timer BUILD_TIMER = Metrics.timer("search.index.build");
+    private static final Metrics.Timer QUERY_TIMER = Metrics.timer("search.query");
+
+    private final long mLastModified, mLength; // Of the XML file it was made from
+
+    private final String[] mIds;
+    private final String[] mTexts;
+
+    // The documents of mKeys[i] are mPostings[mOffsets[i]] to mPostings[mOffsets[i + 1]]
+    private final int[] mKeys;
+    private final int[] mOffsets;
+    private final int[] mPostings;
+
+    //endregion
+
+    //region Constructors
+
+    private SearchIndex(final long lastModified, final long length, final String[] ids, final String[] texts,
+                        final int[] keys, final int[] offsets, final int[] postings) {
+        mLastModified = lastModified;
+        mLength = length;
+        mIds = ids;
+        mTexts = texts;
+        mKeys = keys;
+        mOffsets = offsets;
+        mPostings = postings;
+    }
+
+    // Makes the index for the tags as they are on the given XML file now. The lists of the
+    // strings which are the same on the previous index (which may be null) are reused.
+    public static SearchIndex build(final File xmlFile, final SearchIndex previous, final Iterable<ResTag> tags) {
+        final long start = Metrics.start();
+        final int previousCount = previous == null ? 0 : previous.mIds.length;
+        final HashMap<String, Integer> previousDocs = new HashMap<>(previousCount * 2);
+        for (int i = 0; i < previousCount; ++i)
+            previousDocs.put(previous.mIds[i], i);
+
+        // Reused documents keep their relative order and go first, so that their lists are
+        // still sorted once renumbered, and the new documents (after them) can be appended
+        final boolean[] reused = new boolean[previousCount];
+        final ArrayList<String> freshIds = new ArrayList<>();
+        final ArrayList<String> freshTexts = new ArrayList<>();
+        for (ResTag rt : tags) {
+            final String text = toText(rt.getId(), rt.getContent());
+            final Integer doc = previousDocs.get(rt.getId());
+            if (doc != null && previous.mTexts[doc].equals(text)) {
+                reused[doc] = true;
+            } else {
+                freshIds.add(rt.getId());
+                freshTexts.add(text);
+            }
+        }
+
+        final int[] renumbered = new int[previousCount];
+        int count = 0;
+        for (int i = 0; i < previousCount; ++i)
+            renumbered[i] = reused[i] ? count++ : -1;
+
+        final String[] ids = new String[count + freshIds.size()];
+        final String[] texts = new String[ids.length];
+        for (int i = 0; i < previousCount; ++i) {
+            if (renumbered[i] >= 0) {
+                ids[renumbered[i]] = previous.mIds[i];
+                texts[renumbered[i]] = previous.mTexts[i];
+            }
+        }
+
+        // Trigrams of the new documents, as sorted (trigram, document) pairs
+        int pairCount = 0;
+        for (String text : freshTexts)
+            pairCount += Math.max(0, text.length() - 2);
+
+        long[] pairs = new long[pairCount];
+        pairCount = 0;
+        for (int i = 0; i < freshIds.size(); ++i) {
+            final int doc = count + i;
+            final String text = freshTexts.get(i);
+            ids[doc] = freshIds.get(i);
+            texts[doc] = text;
+            for (int j = 0; j + 2 < text.length(); ++j)
+                pairs[pairCount++] = ((long) trigram(text, j) << 32) | doc;
+        }
+        Arrays.sort(pairs, 0, pairCount);
+
+        // Merge the lists of the previous index (without the documents which are gone)
+        // with those of the new documents, both sorted by trigram
+        final int keyCapacity = (previous == null ? 0 : previous.mKeys.length) + pairCount;
+        int[] keys = new int[Math.max(16, Math.min(keyCapacity, 1 << 16))];
+        int[] offsets = new int[keys.length + 1];
+        int[] postings = new int[Math.max(16, (previous == null ? 0 : previous.mPostings.length) + pairCount)];
+        int keyCount = 0, postingCount = 0;
+
+        int oldKey = 0, pair = 0;
+        final int oldKeyCount = previous == null ? 0 : previous.mKeys.length;
+        while (oldKey < oldKeyCount || pair < pairCount) {
+            final int key;
+            if (pair == pairCount || (oldKey < oldKeyCount && previous.mKeys[oldKey] <= (int) (pairs[pair] >> 32)))
+                key = previous.mKeys[oldKey];
+            else
+                key = (int) (pairs[pair] >> 32);
+
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                offsets = Arrays.copyOf(offsets, keys.length + 1);
+            }
+            offsets[keyCount] = postingCount;
+
+            if (oldKey < oldKeyCount && previous.mKeys[oldKey] == key) {
+                for (int i = previous.mOffsets[oldKey]; i < previous.mOffsets[oldKey + 1]; ++i) {
+                    final int doc = renumbered[previous.mPostings[i]];
+                    if (doc >= 0)
+                        postings[postingCount++] = doc;
+                }
+                oldKey++;
+            }
+            int last = -1;
+            while (pair < pairCount && (int) (pairs[pair] >> 32) == key) {
+                final int doc = (int) pairs[pair++];
+                if (doc != last) // The same trigram may appear several times on a document
+                    postings[postingCount++] = last = doc;
+            }
+
+            if (postingCount != offsets[keyCount])
+                keys[keyCount++] = key;
+        }
+        offsets[keyCount] = postingCount;
+
+        final SearchIndex result = new SearchIndex(xmlFile.lastModified(), xmlFile.length(), ids, texts,
+                Arrays.copyOf(keys, keyCount), Arrays.copyOf(offsets, keyCount + 1),
+                Arrays.copyOf(postings, postingCount));
+        BUILD_TIMER.stop(start);
+        return result;
+    }
+
+    //endregion
+
+    //region Searching
+
+    public boolean isUpToDate(final File xmlFile) {
+        return xmlFile.lastModified() == mLastModified && xmlFile.length() == mLength;
+    }
+
+    public int count() {
+        return mIds.length;
+    }
+
+    // Adds the IDs of the strings matching the query (case insensitive) to the result
+    public void search(final String query, final int match, final Collection<String> result) {
+        final long start = Metrics.start();
+        final String needle = query.toLowerCase();
+        if (needle.length() < 3) {
+            for (int doc = 0; doc < mTexts.length; ++doc)
+                if (matches(mTexts[doc], needle, match))
+                    result.add(mIds[doc]);
+        } else {
+            // Every match must be on the list of each trigram, so the shortest will do
+            int shortest = -1;
+            for (int i = 0; i + 2 < needle.length(); ++i) {
+                final int index = Arrays.binarySearch(mKeys, trigram(needle, i));
+                if (index < 0) {
+                    QUERY_TIMER.stop(start);
+                    return;
+                }
+                if (shortest < 0 || mOffsets[index + 1] - mOffsets[index] < mOffsets[shortest + 1] - mOffsets[shortest])
+                    shortest = index;
+            }
+            for (int i = mOffsets[shortest]; i < mOffsets[shortest + 1]; ++i) {
+                final int doc = mPostings[i];
+                if (matches(mTexts[doc], needle, match))
+                    result.add(mIds[doc]);
+            }
+        }
+        QUERY_TIMER.stop(start);
+    }
+
+    private static boolean matches(final String text, final String needle, final int match) {
+        if (match == MATCH_SUBSTRING)
+            return text.contains(needle);
+
+        for (int i = text.indexOf(needle); i >= 0; i = text.indexOf(needle, i + 1))
+            if (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                return true;
+        return false;
+    }
+
+    private static String toText(final String id, final String content) {
+        return (id + SEPARATOR + content).toLowerCase();
+    }
+
+    // Collisions only mean that a few more documents are checked
+    private static int trigram(final String text, final int i) {
+        return (text.charAt(i) * 31 + text.charAt(i + 1)) * 31 + text.charAt(i + 2);
+    }
+
+    //endregion
+
+    //region Loading
+
+    static File getIndexFile(final File xmlFile) {
+        return new File(xmlFile.getParentFile(), xmlFile.getName() + EXTENSION);
+    }
+
+    public static boolean isIndexFile(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    // Loads the index for the given XML file, or returns null if there's no valid one
+    public static SearchIndex load(final File xmlFile) {
+        final File indexFile = getIndexFile(xmlFile);
+        if (!indexFile.isFile())
+            return null;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(indexFile);
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            final long lastModified = buffer.getLong();
+            final long length = buffer.getLong();
+            if (lastModified != xmlFile.lastModified() || length != xmlFile.length())
+                return null;
+
+            final int checksum = buffer.getInt();
+            if (checksum != ResourcesSnapshot.checksum(buffer.slice()))
+                return null;
+
+            final String[] ids = new String[buffer.getInt()];
+            final String[] texts = new String[ids.length];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < ids.length; ++i) {
+                for (int j = 0; j < 2; ++j) {
+                    final int size = buffer.getInt();
+                    if (bytes.length < size)
+                        bytes = new byte[Math.max(size, bytes.length * 2)];
+                    buffer.get(bytes, 0, size);
+                    if (j == 0)
+                        ids[i] = new String(bytes, 0, size, UTF8);
+                    else
+                        texts[i] = new String(bytes, 0, size, UTF8);
+                }
+            }
+
+            final int[] keys = new int[buffer.getInt()];
+            final int[] offsets = new int[keys.length + 1];
+            final int[] postings = new int[buffer.getInt()];
+            int postingCount = 0;
+            for (int i = 0; i < keys.length; ++i) {
+                keys[i] = buffer.getInt();
+                offsets[i] = postingCount;
+                final int size = readVarInt(buffer);
+                int doc = 0;
+                for (int j = 0; j < size; ++j) {
+                    doc += readVarInt(buffer);
+                    postings[postingCount++] = doc;
+                }
+            }
+            offsets[keys.length] = postingCount;
+
+            return new SearchIndex(lastModified, length, ids, texts, keys, offsets, postings);
+        } catch (IOException | RuntimeException e) {
+            // A corrupt index is no big deal, it will be built again
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static int readVarInt(final ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return result;
+        }
+    }
+
+    //endregion
+
+    //region Saving and deleting
+
+    public boolean save(final File xmlFile) {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(payload);
+            out.writeInt(mIds.length);
+            for (int i = 0; i < mIds.length; ++i) {
+                final byte[] id = mIds[i].getBytes(UTF8);
+                out.writeInt(id.length);
+                out.write(id);
+                final byte[] text = mTexts[i].getBytes(UTF8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+
+            out.writeInt(mKeys.length);
+            out.writeInt(mPostings.length);
+            for (int i = 0; i < mKeys.length; ++i) {
+                out.writeInt(mKeys[i]);
+                writeVarInt(out, mOffsets[i + 1] - mOffsets[i]);
+                int last = 0;
+                for (int j = mOffsets[i]; j < mOffsets[i + 1]; ++j) {
+                    writeVarInt(out, mPostings[j] - last);
+                    last = mPostings[j];
+                }
+            }
+        } catch (IOException e) {
+            // Can't really happen when writing to memory
+            e.printStackTrace();
+            return false;
+        }
+
+        final byte[] bytes = payload.toByteArray();
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(getIndexFile(xmlFile))));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mLastModified);
+            out.writeLong(mLength);
+            out.writeInt(ResourcesSnapshot.checksum(ByteBuffer.wrap(bytes)));
+            out.write(bytes);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Deletes the index for the given XML file, if any
+    public static void delete(final File xmlFile) {
+        final File indexFile = getIndexFile(xmlFile);
+        if (indexFile.isFile() && !indexFile.delete())
+            System.err.println("SearchIndex: Could not delete " + indexFile);
+    }
+
+    //endregion
+}
@@ -0,0 +1,217 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResType;
+
+// A template (strings.xml) once compiled: the literal text in between the tags and, for each
+// of the tags, its literal parts and the "holes" where our translations should be filled in.
+//
+// Filling a compiled template is a lot cheaper than scanning it again, so these are cached
+// on disk next to the template itself, and rebuilt whenever its modification time or size
+// change. See ResourcesParser.compileTemplate and ResourcesParser.applyTemplate.
+public class TemplatePlan {
+
+    //region Constants
+
+    private static final String EXTENSION = ".plan";
+
+    private static final int MAGIC = 0x534c5450; // "SLTP"
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //endregion
+
+    //region Members
+
+    private final long mLastModified;
+    private final long mLength;
+    final ArrayList<Segment> mSegments;
+
+    //endregion
+
+    //region Sub classes
+
+    // Either literal text (without ID), or a tag which may have holes for its content
+    static class Segment {
+        final String mId;
+        final ResType mType;
+        final String[] mParts; // Literal parts, there's always one more than holes
+        final String[] mHoles; // Quantity of each hole for plurals, unused otherwise
+
+        Segment(final String id, final ResType type, final String[] parts, final String[] holes) {
+            if (parts.length != holes.length + 1)
+                throw new IllegalArgumentException("There must be one more part than holes");
+            mId = id;
+            mType = type;
+            mParts = parts;
+            mHoles = holes;
+        }
+
+        static Segment literal(final String text) {
+            return new Segment(null, ResType.UNKNOWN, new String[]{text}, new String[0]);
+        }
+
+        boolean isLiteral() {
+            return mId == null;
+        }
+    }
+
+    //endregion
+
+    //region Constructors
+
+    TemplatePlan(final long lastModified, final long length, final ArrayList<Segment> segments) {
+        mLastModified = lastModified;
+        mLength = length;
+        mSegments = segments;
+    }
+
+    // Loads the compiled template from its cache if it's up to date, or compiles
+    // it (and updates the cache) otherwise. Returns null if it can't be compiled.
+    public static TemplatePlan fromFile(final File template) {
+        final File planFile = getPlanFile(template);
+        if (planFile.isFile()) {
+            final TemplatePlan plan = load(planFile);
+            if (plan != null && plan.isUpToDate(template))
+                return plan;
+        }
+
+        final TemplatePlan plan = ResourcesParser.compileTemplate(template);
+        if (plan != null)
+            plan.save(planFile);
+
+        return plan;
+    }
+
+    //endregion
+
+    //region Getters
+
+    // Determines whether this plan was compiled from the current version of the template
+    public boolean isUpToDate(final File template) {
+        return template.lastModified() == mLastModified && template.length() == mLength;
+    }
+
+    private static File getPlanFile(final File template) {
+        return new File(template.getParentFile(), template.getName() + EXTENSION);
+    }
+
+    public static boolean isPlanFile(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    //endregion
+
+    //region Load/save/delete
+
+    private static TemplatePlan load(final File planFile) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(planFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            final long lastModified = in.readLong();
+            final long length = in.readLong();
+            final int count = in.readInt();
+            final ArrayList<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final String id = readString(in);
+                final ResType type = ResType.values()[in.readByte()];
+                final String[] holes = new String[in.readInt()];
+                final String[] parts = new String[holes.length + 1];
+                for (int j = 0; j < holes.length; ++j)
+                    holes[j] = readString(in);
+                for (int j = 0; j < parts.length; ++j)
+                    parts[j] = readString(in);
+
+                segments.add(new Segment(id, type, parts, holes));
+            }
+            return new TemplatePlan(lastModified, length, segments);
+        } catch (IOException | RuntimeException e) {
+            // A corrupt plan is no big deal, it will be compiled again
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Written through an AtomicFile, so an interrupted save never leaves a truncated plan
+    private boolean save(final File planFile) {
+        final AtomicFile atomicFile = new AtomicFile(planFile, false);
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = atomicFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mLastModified);
+            out.writeLong(mLength);
+            out.writeInt(mSegments.size());
+            for (Segment segment : mSegments) {
+                writeString(out, segment.mId);
+                out.writeByte(segment.mType.ordinal());
+                out.writeInt(segment.mHoles.length);
+                for (String hole : segment.mHoles)
+                    writeString(out, hole);
+                for (String part : segment.mParts)
+                    writeString(out, part);
+            }
+            out.flush();
+            return atomicFile.finishWrite(fileOut);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (fileOut != null)
+                atomicFile.failWrite(fileOut);
+            return false;
+        }
+    }
+
+    // Deletes the cached plan for the given template, if any. Returns false if it's still there
+    public static boolean delete(final File template) {
+        final File planFile = getPlanFile(template);
+        return !planFile.isFile() || planFile.delete();
+    }
+
+    // Strings are saved as their UTF-8 length (or -1 if null) followed by their bytes
+    private static void writeString(final DataOutputStream out, final String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = string.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    //endregion
+}
@@ -0,0 +1,305 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+// Single-pass tokenizer for the template (strings.xml) files. It splits the input into
+// literal text and <string>, <string-array>, <plurals> or <item> tags, following the
+// same rules as the regex that was previously used to find them, that is:
+//
+//   <(string(?:-array)?|plurals|item)((?:\s+\w+\s*=\s*"\w+")*)\s*>([\S\s]*?)(?:</\s*\1\s*>)
+//
+// The input is read on demand, so only the current token (plus whatever it needs to
+// look ahead to find its closing tag) is kept in memory. Line terminators are normalized
+// to '\n', and a trailing one is added if missing, exactly like FileUtils.readTextFile.
+class TemplateScanner {
+
+    //region Constants
+
+    static final int END = 0;
+    static final int LITERAL = 1;
+    static final int TAG = 2;
+
+    private static final String[] TAG_NAMES = {"string-array", "string", "plurals", "item"};
+
+    private static final int CHUNK_SIZE = 8192;
+
+    //endregion
+
+    //region Members
+
+    private final Reader mIn;
+    private char[] mBuf;
+    private int mPos, mLen;
+    private boolean mEof;
+
+    private boolean mAnyRead;
+    private boolean mLastWasCr;
+    private char mLastChar;
+
+    // Tag names for which no closing tag is left (so we don't look for it again)
+    private final HashSet<String> mUnclosed = new HashSet<>();
+
+    // Information about the last matched tag, with offsets relative to its '<'
+    private boolean mTagReady;
+    private String mName;
+    private final ArrayList<String> mAttrs = new ArrayList<>(); // name, value, name, value…
+    private int mContentStart, mContentEnd, mTagEnd;
+
+    private String mText;
+
+    //endregion
+
+    //region Constructors
+
+    // Scans the given reader, normalizing its line endings
+    TemplateScanner(final Reader in) {
+        mIn = in;
+        mBuf = new char[CHUNK_SIZE];
+    }
+
+    // Scans the given text as-is, used to scan the contents of an already matched tag
+    TemplateScanner(final String text) {
+        mIn = null;
+        mBuf = text.toCharArray();
+        mLen = mBuf.length;
+        mEof = true;
+    }
+
+    //endregion
+
+    //region Tokens
+
+    // Advances to the next token and returns its type (END, LITERAL or TAG)
+    int next() throws IOException {
+        if (mTagReady) {
+            mTagReady = false;
+            return consume(TAG, mTagEnd);
+        }
+        if (peek(0) == -1) {
+            mText = null;
+            return END;
+        }
+        if (peek(0) == '<' && matchTag(0)) {
+            return consume(TAG, mTagEnd);
+        }
+
+        // Literal text until the next valid tag. Long literals are split in chunks
+        int i = 1;
+        for (int c = peek(i); c != -1 && i < CHUNK_SIZE; c = peek(++i)) {
+            if (c == '<' && matchTag(i)) {
+                mTagReady = true;
+                break;
+            }
+        }
+        return consume(LITERAL, i);
+    }
+
+    // The whole text for the current token, including the tags themselves if it's a TAG
+    String getText() {
+        return mText;
+    }
+
+    // The name of the current TAG, i.e. "string", "string-array", "plurals" or "item"
+    String getName() {
+        return mName;
+    }
+
+    // Returns the value of the first attribute matching any of the names, or "" if none
+    String getAttr(final String... names) {
+        for (int i = 0; i < mAttrs.size(); i += 2) {
+            for (String name : names) {
+                if (mAttrs.get(i).equals(name)) {
+                    return mAttrs.get(i + 1);
+                }
+            }
+        }
+        return "";
+    }
+
+    // Where the content of the current TAG starts and ends on getText()
+    int getContentStart() {
+        return mContentStart;
+    }
+
+    int getContentEnd() {
+        return mContentEnd;
+    }
+
+    private int consume(final int type, final int length) {
+        mText = new String(mBuf, mPos, length);
+        mPos += length;
+        return type;
+    }
+
+    //endregion
+
+    //region Matching
+
+    // Determines whether there's a tag starting at the given '<', and saves its information
+    private boolean matchTag(final int at) throws IOException {
+        int i = at + 1;
+
+        mName = null;
+        for (String name : TAG_NAMES) {
+            if (regionMatches(i, name)) {
+                mName = name;
+                break;
+            }
+        }
+        if (mName == null || mUnclosed.contains(mName))
+            return false;
+
+        // (?:\s+\w+\s*=\s*"\w+")*
+        i += mName.length();
+        mAttrs.clear();
+        while (true) {
+            int j = i;
+            if (!isSpace(peek(j)))
+                break;
+            while (isSpace(peek(j)))
+                j++;
+
+            final int nameStart = j;
+            while (isWord(peek(j)))
+                j++;
+            if (j == nameStart)
+                break;
+            final int nameEnd = j;
+
+            while (isSpace(peek(j)))
+                j++;
+            if (peek(j) != '=')
+                break;
+            j++;
+            while (isSpace(peek(j)))
+                j++;
+            if (peek(j) != '"')
+                break;
+            j++;
+
+            final int valueStart = j;
+            while (isWord(peek(j)))
+                j++;
+            if (j == valueStart || peek(j) != '"')
+                break;
+
+            mAttrs.add(new String(mBuf, mPos + nameStart, nameEnd - nameStart));
+            mAttrs.add(new String(mBuf, mPos + valueStart, j - valueStart));
+            i = j + 1;
+        }
+
+        // \s*>
+        while (isSpace(peek(i)))
+            i++;
+        if (peek(i) != '>')
+            return false;
+        i++;
+
+        // ([\S\s]*?)(?:</\s*\1\s*>)
+        for (int c = peek(i); c != -1; c = peek(++i)) {
+            if (c == '<' && peek(i + 1) == '/') {
+                int j = i + 2;
+                while (isSpace(peek(j)))
+                    j++;
+                if (regionMatches(j, mName)) {
+                    j += mName.length();
+                    while (isSpace(peek(j)))
+                        j++;
+                    if (peek(j) == '>') {
+                        mContentStart = findContentStart(at);
+                        mContentEnd = i - at;
+                        mTagEnd = j + 1 - at;
+                        return true;
+                    }
+                }
+            }
+        }
+
+        // No closing tag until the end, no other tag with this name will ever match
+        mUnclosed.add(mName);
+        return false;
+    }
+
+    private int findContentStart(final int at) {
+        int i = at;
+        while (mBuf[mPos + i] != '>')
+            i++;
+        return i + 1 - at;
+    }
+
+    private boolean regionMatches(final int at, final String what) throws IOException {
+        for (int i = 0; i < what.length(); ++i)
+            if (peek(at + i) != what.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static boolean isSpace(final int c) {
+        // \s, but '\r' won't ever show up since it's normalized
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isWord(final int c) {
+        // \w
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    //endregion
+
+    //region Buffering
+
+    // Returns the character at the given offset from the current position, or -1 if EOF
+    private int peek(final int offset) throws IOException {
+        final int i = mPos + offset;
+        if (i < mLen)
+            return mBuf[i];
+
+        while (!mEof && mPos + offset >= mLen)
+            fill();
+
+        return mPos + offset < mLen ? mBuf[mPos + offset] : -1;
+    }
+
+    private void fill() throws IOException {
+        // Move the unconsumed characters to the start, and grow if that's not enough
+        if (mPos > 0) {
+            System.arraycopy(mBuf, mPos, mBuf, 0, mLen - mPos);
+            mLen -= mPos;
+            mPos = 0;
+        }
+        if (mBuf.length - mLen < CHUNK_SIZE / 2) {
+            final char[] buf = new char[mBuf.length * 2];
+            System.arraycopy(mBuf, 0, buf, 0, mLen);
+            mBuf = buf;
+        }
+
+        final int read = mIn.read(mBuf, mLen, mBuf.length - mLen - 1);
+        if (read == -1) {
+            mEof = true;
+            // Every line ends with '\n', even the last one
+            if (mAnyRead && mLastChar != '\n')
+                mBuf[mLen++] = '\n';
+            return;
+        }
+
+        // Normalize "\r\n" and "\r" into '\n' in place
+        int out = mLen;
+        for (int i = mLen; i < mLen + read; ++i) {
+            final char c = mBuf[i];
+            if (c == '\n' && mLastWasCr) {
+                mLastWasCr = false;
+                continue;
+            }
+            mLastWasCr = c == '\r';
+            mLastChar = mLastWasCr ? '\n' : c;
+            mBuf[out++] = mLastChar;
+        }
+        mAnyRead |= out != mLen;
+        mLen = out;
+    }
+
+    //endregion
+}
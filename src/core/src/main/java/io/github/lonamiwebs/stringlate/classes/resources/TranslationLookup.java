@@ -0,0 +1,300 @@
+package io.github.lonamiwebs.stringlate.classes.resources;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.lonamiwebs.stringlate.classes.AtomicFile;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.IdPool;
+import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
+
+// Looks up the content of a string on many locales at once, without loading all of them.
+//
+// Every strings.xml file has a column next to it with its strings sorted by ID, which is
+// memory mapped, so finding a string is a binary search that only reads a few IDs (and
+// only the content found is decoded). Like the ResourcesSnapshot, a column is only used
+// if the modification time and size of the XML match, and outdated or missing columns
+// are made again from the resources. Saving resources updates their column, if any.
+//
+// The format is the header (magic, version, XML modification time and size, count),
+// the rows sorted by ID (the position of the ID and that of the content), and then
+// every ID and content (their length and their UTF-8 bytes).
+public class TranslationLookup {
+
+    //region Constants and members
+
+    private static final String EXTENSION = ".lookup";
+
+    private static final int MAGIC = 0x534c544c; // "SLTL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int ROW_SIZE = 4 + 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Metrics.Timer BUILD_TIMER = Metrics.timer("lookup.build");
+    private static final Metrics.Timer LOOKUP_TIMER = Metrics.timer("lookup.get");
+
+    private static class Column {
+        final long lastModified, length;
+        final ByteBuffer buffer;
+        final int count;
+
+        Column(final long lastModified, final long length, final ByteBuffer buffer, final int count) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        boolean isUpToDate(final File xmlFile) {
+            return xmlFile.lastModified() == lastModified && xmlFile.length() == length;
+        }
+    }
+
+    private final IdPool mIdPool;
+    private final HashMap<File, Column> mColumns = new HashMap<>();
+
+    //endregion
+
+    //region Constructor
+
+    public TranslationLookup(final IdPool idPool) {
+        mIdPool = idPool;
+    }
+
+    //endregion
+
+    //region Looking up
+
+    // Returns the (non-empty) content of the string for every locale that has it, given
+    // their strings.xml files, in the same order. Missing columns are made as needed.
+    public LinkedHashMap<String, String> get(final String resourceId, final Map<String, File> localeFiles) {
+        final long start = Metrics.start();
+        final byte[] id = resourceId.getBytes(UTF8);
+        final LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, File> localeFile : localeFiles.entrySet()) {
+            final Column column = getColumn(localeFile.getValue());
+            if (column != null) {
+                try {
+                    final String content = find(column, id);
+                    if (content != null && !content.isEmpty())
+                        result.put(localeFile.getKey(), content);
+                } catch (RuntimeException e) {
+                    // The column is corrupt (the XML is still fine), make it again next time
+                    e.printStackTrace();
+                    forget(localeFile.getValue());
+                }
+            }
+        }
+        LOOKUP_TIMER.stop(start);
+        return result;
+    }
+
+    private synchronized Column getColumn(final File xmlFile) {
+        Column column = mColumns.get(xmlFile);
+        if (column != null && column.isUpToDate(xmlFile))
+            return column;
+
+        mColumns.remove(xmlFile);
+        if (!xmlFile.isFile())
+            return null;
+
+        column = load(xmlFile);
+        if (column == null) {
+            final long start = Metrics.start();
+            save(xmlFile, Resources.fromFile(xmlFile, mIdPool, true).getStrings());
+            column = load(xmlFile);
+            BUILD_TIMER.stop(start);
+        }
+        if (column != null)
+            mColumns.put(xmlFile, column);
+
+        return column;
+    }
+
+    private synchronized void forget(final File xmlFile) {
+        mColumns.remove(xmlFile);
+        delete(xmlFile);
+    }
+
+    // Binary search over the rows, comparing the UTF-8 bytes of the IDs
+    private static String find(final Column column, final byte[] id) {
+        final ByteBuffer buffer = column.buffer;
+        int low = 0, high = column.count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int row = HEADER_SIZE + mid * ROW_SIZE;
+            final int cmp = compare(buffer, buffer.getInt(row), id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                final int position = buffer.getInt(row + 4);
+                final byte[] content = new byte[buffer.getInt(position)];
+                final ByteBuffer view = buffer.duplicate();
+                view.position(position + 4);
+                view.get(content);
+                return new String(content, UTF8);
+            }
+        }
+        return null;
+    }
+
+    private static int compare(final ByteBuffer buffer, final int position, final byte[] id) {
+        final int length = buffer.getInt(position);
+        final int common = Math.min(length, id.length);
+        for (int i = 0; i < common; ++i) {
+            final int cmp = (buffer.get(position + 4 + i) & 0xff) - (id[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return length - id.length;
+    }
+
+    private static int compare(final byte[] a, final byte[] b) {
+        final int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; ++i) {
+            final int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    //endregion
+
+    //region Loading
+
+    static File getColumnFile(final File xmlFile) {
+        return new File(xmlFile.getParentFile(), xmlFile.getName() + EXTENSION);
+    }
+
+    public static boolean isColumnFile(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    // Maps the column for the given XML file, or returns null if there's no valid one
+    private static Column load(final File xmlFile) {
+        final File columnFile = getColumnFile(xmlFile);
+        if (!columnFile.isFile())
+            return null;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(columnFile);
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE ||
+                    buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            final long lastModified = buffer.getLong();
+            final long length = buffer.getLong();
+            if (lastModified != xmlFile.lastModified() || length != xmlFile.length())
+                return null;
+
+            final int count = buffer.getInt();
+            if (count < 0 || HEADER_SIZE + (long) count * ROW_SIZE > buffer.limit())
+                return null;
+
+            // The mapping is still valid once the channel is closed
+            return new Column(lastModified, length, buffer, count);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Saving and deleting
+
+    static boolean exists(final File xmlFile) {
+        return getColumnFile(xmlFile).isFile();
+    }
+
+    // Saves the column for the tags as they are on the given XML file now. It's written
+    // through an AtomicFile so that a half written column is never mapped.
+    static boolean save(final File xmlFile, final Collection<ResTag> tags) {
+        final ArrayList<byte[]> ids = new ArrayList<>(tags.size());
+        final HashMap<byte[], byte[]> contents = new HashMap<>(tags.size() * 2);
+        for (ResTag rt : tags) {
+            final byte[] id = rt.getId().getBytes(UTF8);
+            ids.add(id);
+            contents.put(id, rt.getContent().getBytes(UTF8));
+        }
+        final byte[][] sorted = ids.toArray(new byte[ids.size()][]);
+        Arrays.sort(sorted, new Comparator<byte[]>() {
+            @Override
+            public int compare(final byte[] a, final byte[] b) {
+                return TranslationLookup.compare(a, b);
+            }
+        });
+
+        final AtomicFile atomicFile = new AtomicFile(getColumnFile(xmlFile), false);
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = atomicFile.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(xmlFile.lastModified());
+            out.writeLong(xmlFile.length());
+            out.writeInt(sorted.length);
+
+            int position = HEADER_SIZE + sorted.length * ROW_SIZE;
+            for (byte[] id : sorted) {
+                out.writeInt(position);
+                position += 4 + id.length;
+                out.writeInt(position);
+                position += 4 + contents.get(id).length;
+            }
+            for (byte[] id : sorted) {
+                final byte[] content = contents.get(id);
+                out.writeInt(id.length);
+                out.write(id);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            out.flush();
+            return atomicFile.finishWrite(fileOut);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (fileOut != null)
+                atomicFile.failWrite(fileOut);
+            return false;
+        }
+    }
+
+    // Deletes the column for the given XML file, if any. Returns false if it's still there
+    public static boolean delete(final File xmlFile) {
+        final File columnFile = getColumnFile(xmlFile);
+        return !columnFile.isFile() || columnFile.delete();
+    }
+
+    //endregion
+}
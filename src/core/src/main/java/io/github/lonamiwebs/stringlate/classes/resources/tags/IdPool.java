@@ -0,0 +1,32 @@
+package io.github.lonamiwebs.stringlate.classes.resources.tags;
+
+import java.util.HashMap;
+
+// Interns the IDs of the resources, so that the same ID (e.g. "names#a:3") is only
+// kept once in memory, no matter how many locales of the same repository are loaded
+public class IdPool {
+
+    //region Members
+
+    private final HashMap<String, String> mIds = new HashMap<>();
+
+    //endregion
+
+    //region Interning
+
+    // Returns the pooled instance equal to the given ID, adding it if it's not there
+    public synchronized String intern(final String id) {
+        final String pooled = mIds.get(id);
+        if (pooled != null)
+            return pooled;
+
+        mIds.put(id, id);
+        return id;
+    }
+
+    public synchronized int size() {
+        return mIds.size();
+    }
+
+    //endregion
+}
@@ -0,0 +1,537 @@
+package io.github.lonamiwebs.stringlate.classes.resources.tags;
+
+import java.util.ArrayList;
+
+// Tells whether the content of a string is well-formed XML markup (as in "<b>bold</b> &amp;
+// <xliff:g id="n">%d</xliff:g>"), deciding whether its angle brackets must be escaped.
+//
+// It follows the same rules as an XML parser would when parsing the content wrapped in some
+// root tag (that's how it used to be done), but without building any parser or document:
+// tags must be properly nested and have valid names and attributes, only the predefined and
+// numeric entities exist, and comments, CDATA sections and processing instructions are fine.
+// Namespaces are resolved like a namespace aware parser does: prefixes must be declared (even
+// xliff, since the content is checked without the <resources> declaring it), the reserved
+// xml and xmlns ones can't be redeclared, and attributes can't repeat once their prefixes are
+// replaced by the namespace they stand for.
+final class MarkupValidator {
+
+    private static final String XML_URI = "http://www.w3.org/XML/1998/namespace";
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private final String mContent;
+    private final int mLength;
+    private int mPos;
+
+    private int[] mOpenTags = new int[16]; // Pairs of (start, end) of the open tag names
+    private int mOpenCount;
+
+    // Quads of (name start, name end, value start, value end) of the current tag attributes
+    private int[] mAttributes = new int[16];
+    private int mAttributeCount;
+
+    private ArrayList<String> mBoundPrefixes; // Only created if some prefix is declared
+    private ArrayList<String> mBoundUris;
+    private ArrayList<Integer> mBoundDepths;
+
+    private MarkupValidator(final String content) {
+        mContent = content;
+        mLength = content.length();
+    }
+
+    static boolean isWellFormed(final String content) {
+        return new MarkupValidator(content).validate();
+    }
+
+    //region Content
+
+    private boolean validate() {
+        while (mPos < mLength) {
+            final char c = mContent.charAt(mPos);
+            if (c == '<') {
+                if (!markup())
+                    return false;
+            } else if (c == '&') {
+                if (!reference())
+                    return false;
+            } else if (c == ']' && mContent.startsWith("]]>", mPos)) {
+                return false;
+            } else if (!character()) {
+                return false;
+            }
+        }
+        return mOpenCount == 0;
+    }
+
+    private boolean markup() {
+        final int next = mPos + 1;
+        if (next >= mLength)
+            return false;
+
+        switch (mContent.charAt(next)) {
+            case '/':
+                return endTag();
+            case '?':
+                return processingInstruction();
+            case '!':
+                if (mContent.startsWith("<!--", mPos))
+                    return comment();
+                if (mContent.startsWith("<![CDATA[", mPos))
+                    return cdata();
+                return false; // <!DOCTYPE and the like can't be inside an element
+            default:
+                return startTag();
+        }
+    }
+
+    // Consumes a (possibly surrogate pair) character, which must be allowed on XML
+    private boolean character() {
+        final char c = mContent.charAt(mPos);
+        if (Character.isHighSurrogate(c)) {
+            if (mPos + 1 >= mLength || !Character.isLowSurrogate(mContent.charAt(mPos + 1)))
+                return false;
+            mPos += 2;
+            return true;
+        }
+        mPos++;
+        return isXmlChar(c);
+    }
+
+    private static boolean isXmlChar(final int c) {
+        return c == 0x9 || c == 0xA || c == 0xD || (c >= 0x20 && c <= 0xD7FF) ||
+                (c >= 0xE000 && c <= 0xFFFD) || (c >= 0x10000 && c <= 0x10FFFF);
+    }
+
+    // &lt; &gt; &amp; &quot; &apos; &#123; or &#x7B;
+    private boolean reference() {
+        final int semicolon = mContent.indexOf(';', mPos);
+        if (semicolon < 0)
+            return false;
+
+        final int start = mPos + 1;
+        mPos = semicolon + 1;
+        return referencedChar(start, semicolon) >= 0;
+    }
+
+    // The character referenced between & and ;, or -1 if there's no such reference
+    private int referencedChar(final int start, final int end) {
+        if (start < end && mContent.charAt(start) == '#') {
+            int value = 0;
+            final boolean hex = start + 1 < end && mContent.charAt(start + 1) == 'x';
+            final int digits = start + (hex ? 2 : 1);
+            if (digits == end)
+                return -1;
+
+            for (int i = digits; i < end; ++i) {
+                final int digit = Character.digit(mContent.charAt(i), hex ? 16 : 10);
+                if (digit < 0 || value > 0x10FFFF)
+                    return -1;
+                value = value * (hex ? 16 : 10) + digit;
+            }
+            return isXmlChar(value) && !(value >= 0xD800 && value <= 0xDFFF) ? value : -1;
+        }
+
+        switch (end - start) {
+            case 2:
+                if (mContent.startsWith("lt", start))
+                    return '<';
+                if (mContent.startsWith("gt", start))
+                    return '>';
+                return -1;
+            case 3:
+                return mContent.startsWith("amp", start) ? '&' : -1;
+            case 4:
+                if (mContent.startsWith("quot", start))
+                    return '"';
+                if (mContent.startsWith("apos", start))
+                    return '\'';
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    //endregion
+
+    //region Tags
+
+    private boolean startTag() {
+        mPos++; // <
+        final int nameStart = mPos;
+        if (!name())
+            return false;
+        final int nameEnd = mPos;
+
+        final int depth = mOpenCount + 1;
+        mAttributeCount = 0;
+        boolean selfClosing = false;
+        while (true) {
+            final boolean hadSpace = skipSpaces();
+            if (mPos >= mLength)
+                return false;
+
+            final char c = mContent.charAt(mPos);
+            if (c == '>') {
+                mPos++;
+                break;
+            }
+            if (c == '/') {
+                if (mPos + 1 >= mLength || mContent.charAt(mPos + 1) != '>')
+                    return false;
+                mPos += 2;
+                selfClosing = true;
+                break;
+            }
+            if (!hadSpace || !attribute())
+                return false;
+        }
+
+        // Prefixes may be declared anywhere on the very same tag, so only resolve them now
+        if (!declarePrefixes(depth) || !isElementPrefixBound(nameStart, nameEnd) || !attributesUnique())
+            return false;
+
+        if (selfClosing) {
+            unbindPrefixes(depth);
+        } else {
+            if (mOpenCount * 2 == mOpenTags.length) {
+                final int[] grown = new int[mOpenTags.length * 2];
+                System.arraycopy(mOpenTags, 0, grown, 0, mOpenTags.length);
+                mOpenTags = grown;
+            }
+            mOpenTags[mOpenCount * 2] = nameStart;
+            mOpenTags[mOpenCount * 2 + 1] = nameEnd;
+            mOpenCount++;
+        }
+        return true;
+    }
+
+    private boolean endTag() {
+        mPos += 2; // </
+        final int nameStart = mPos;
+        if (!name())
+            return false;
+        final int nameEnd = mPos;
+        skipSpaces();
+        if (mPos >= mLength || mContent.charAt(mPos) != '>' || mOpenCount == 0)
+            return false;
+        mPos++;
+
+        final int openStart = mOpenTags[(mOpenCount - 1) * 2];
+        final int openEnd = mOpenTags[(mOpenCount - 1) * 2 + 1];
+        if (openEnd - openStart != nameEnd - nameStart ||
+                !mContent.regionMatches(openStart, mContent, nameStart, nameEnd - nameStart))
+            return false;
+
+        unbindPrefixes(mOpenCount);
+        mOpenCount--;
+        return true;
+    }
+
+    // name="value" or name='value'
+    private boolean attribute() {
+        final int nameStart = mPos;
+        if (!name())
+            return false;
+        final int nameEnd = mPos;
+
+        skipSpaces();
+        if (mPos >= mLength || mContent.charAt(mPos) != '=')
+            return false;
+        mPos++;
+        skipSpaces();
+        if (mPos >= mLength)
+            return false;
+
+        final char quote = mContent.charAt(mPos);
+        if (quote != '"' && quote != '\'')
+            return false;
+        mPos++;
+        final int valueStart = mPos;
+        while (true) {
+            if (mPos >= mLength)
+                return false;
+
+            final char c = mContent.charAt(mPos);
+            if (c == quote) {
+                break;
+            } else if (c == '<') {
+                return false;
+            } else if (c == '&') {
+                if (!reference())
+                    return false;
+            } else if (!character()) {
+                return false;
+            }
+        }
+        final int valueEnd = mPos;
+        mPos++;
+
+        if (mAttributeCount * 4 == mAttributes.length) {
+            final int[] grown = new int[mAttributes.length * 2];
+            System.arraycopy(mAttributes, 0, grown, 0, mAttributes.length);
+            mAttributes = grown;
+        }
+        final int i = mAttributeCount * 4;
+        mAttributes[i] = nameStart;
+        mAttributes[i + 1] = nameEnd;
+        mAttributes[i + 2] = valueStart;
+        mAttributes[i + 3] = valueEnd;
+        mAttributeCount++;
+        return true;
+    }
+
+    // The value of an attribute as a parser sees it, with the references replaced and
+    // the line breaks and tabs turned into spaces (but not those written as references)
+    private String attributeValue(final int index) {
+        final int end = mAttributes[index * 4 + 3];
+        final StringBuilder sb = new StringBuilder(end - mAttributes[index * 4 + 2]);
+        for (int i = mAttributes[index * 4 + 2]; i < end; ++i) {
+            final char c = mContent.charAt(i);
+            if (c == '&') {
+                final int semicolon = mContent.indexOf(';', i);
+                sb.appendCodePoint(referencedChar(i + 1, semicolon));
+                i = semicolon;
+            } else if (c == '\r') {
+                sb.append(' ');
+                if (i + 1 < end && mContent.charAt(i + 1) == '\n')
+                    i++;
+            } else if (c == '\n' || c == '\t') {
+                sb.append(' ');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Attributes can't be repeated, neither by name nor by namespace and local name once
+    // their prefixes are resolved (p:a and q:a are the same if p and q are the same URI)
+    private boolean attributesUnique() {
+        String[] uris = null; // Only created if some attribute has a namespace
+        for (int i = 0; i < mAttributeCount; ++i) {
+            final int nameStart = mAttributes[i * 4];
+            final int nameEnd = mAttributes[i * 4 + 1];
+            for (int j = 0; j < i; ++j)
+                if (regionEquals(mAttributes[j * 4], mAttributes[j * 4 + 1], nameStart, nameEnd))
+                    return false;
+
+            final int colon = prefixEnd(nameStart, nameEnd);
+            if (colon < 0 || isRegion(nameStart, colon, "xmlns"))
+                continue; // No namespace, or a declaration
+
+            final String uri = getUri(nameStart, colon);
+            if (uri == null)
+                return false;
+
+            if (uris == null)
+                uris = new String[mAttributeCount];
+            uris[i] = uri;
+            for (int j = 0; j < i; ++j) {
+                if (uri.equals(uris[j]) && regionEquals(prefixEnd(mAttributes[j * 4], mAttributes[j * 4 + 1]) + 1,
+                        mAttributes[j * 4 + 1], colon + 1, nameEnd))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    //endregion
+
+    //region Other markup
+
+    // <!-- comment -->, which can't contain "--"
+    private boolean comment() {
+        final int start = mPos + 4;
+        final int end = mContent.indexOf("--", start);
+        if (end < 0 || !mContent.startsWith("-->", end))
+            return false;
+
+        mPos = start;
+        while (mPos < end)
+            if (!character())
+                return false;
+
+        mPos = end + 3;
+        return true;
+    }
+
+    private boolean cdata() {
+        final int start = mPos + 9;
+        final int end = mContent.indexOf("]]>", start);
+        if (end < 0)
+            return false;
+
+        mPos = start;
+        while (mPos < end)
+            if (!character())
+                return false;
+
+        mPos = end + 3;
+        return true;
+    }
+
+    // <?target data?>, where target can't be "xml"
+    private boolean processingInstruction() {
+        mPos += 2;
+        final int targetStart = mPos;
+        // Targets aren't namespaced, so colons may be anywhere on them
+        while (mPos < mLength && (isNameChar(mContent.charAt(mPos)) || mContent.charAt(mPos) == ':'))
+            mPos++;
+        if (mPos == targetStart || !isNameStartChar(mContent.charAt(targetStart)) && mContent.charAt(targetStart) != ':')
+            return false;
+        if (mPos - targetStart == 3 && mContent.regionMatches(true, targetStart, "xml", 0, 3))
+            return false;
+
+        final int end = mContent.indexOf("?>", mPos);
+        if (end < 0)
+            return false;
+        if (mPos != end && !skipSpaces())
+            return false;
+
+        while (mPos < end)
+            if (!character())
+                return false;
+
+        mPos = end + 2;
+        return true;
+    }
+
+    //endregion
+
+    //region Names and namespaces
+
+    // Consumes a name made of up to two parts separated by a colon (prefix:local). A name
+    // starting with a colon has no prefix instead, but then it can't have any other colon
+    private boolean name() {
+        if (mPos >= mLength)
+            return false;
+
+        boolean colon = mContent.charAt(mPos) == ':';
+        if (!colon && !isNameStartChar(mContent.charAt(mPos)))
+            return false;
+
+        mPos++;
+        while (mPos < mLength) {
+            final char c = mContent.charAt(mPos);
+            if (c == ':') {
+                if (colon || mPos + 1 >= mLength || !isNameStartChar(mContent.charAt(mPos + 1)))
+                    return false;
+                colon = true;
+            } else if (!isNameChar(c)) {
+                break;
+            }
+            mPos++;
+        }
+        return true;
+    }
+
+    private static boolean isNameStartChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' ||
+                (c >= 0xC0 && c <= 0xD6) || (c >= 0xD8 && c <= 0xF6) || (c >= 0xF8 && c <= 0x2FF) ||
+                (c >= 0x370 && c <= 0x37D) || (c >= 0x37F && c <= 0x1FFF) ||
+                c == 0x200C || c == 0x200D || (c >= 0x2070 && c <= 0x218F) ||
+                (c >= 0x2C00 && c <= 0x2FEF) || (c >= 0x3001 && c <= 0xD7FF) ||
+                (c >= 0xF900 && c <= 0xFDCF) || (c >= 0xFDF0 && c <= 0xFFFD);
+    }
+
+    private static boolean isNameChar(final char c) {
+        return isNameStartChar(c) || c == '-' || c == '.' || (c >= '0' && c <= '9') ||
+                c == 0xB7 || (c >= 0x300 && c <= 0x36F) || c == 0x203F || c == 0x2040;
+    }
+
+    private boolean skipSpaces() {
+        final int start = mPos;
+        while (mPos < mLength) {
+            final char c = mContent.charAt(mPos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                break;
+            mPos++;
+        }
+        return mPos != start;
+    }
+
+    // The colon after the prefix of the name, or -1 if it has no prefix
+    private int prefixEnd(final int nameStart, final int nameEnd) {
+        for (int i = nameStart + 1; i < nameEnd; ++i)
+            if (mContent.charAt(i) == ':')
+                return i;
+        return -1;
+    }
+
+    private boolean isRegion(final int start, final int end, final String text) {
+        return end - start == text.length() && mContent.startsWith(text, start);
+    }
+
+    private boolean regionEquals(final int start, final int end, final int otherStart, final int otherEnd) {
+        return end - start == otherEnd - otherStart &&
+                mContent.regionMatches(start, mContent, otherStart, end - start);
+    }
+
+    // Binds the prefixes the tag declares (xmlns:prefix="uri"), which can't be undeclared nor
+    // use the URIs reserved for xml and xmlns (only xml may be declared, to its very own URI)
+    private boolean declarePrefixes(final int depth) {
+        for (int i = 0; i < mAttributeCount; ++i) {
+            final int nameStart = mAttributes[i * 4];
+            final int nameEnd = mAttributes[i * 4 + 1];
+            if (isRegion(nameStart, nameEnd, "xmlns")) {
+                // The default namespace doesn't matter, since unprefixed names need no binding
+                final String uri = attributeValue(i);
+                if (uri.equals(XML_URI) || uri.equals(XMLNS_URI))
+                    return false;
+                continue;
+            }
+
+            final int colon = prefixEnd(nameStart, nameEnd);
+            if (colon < 0 || !isRegion(nameStart, colon, "xmlns"))
+                continue;
+
+            final String prefix = mContent.substring(colon + 1, nameEnd);
+            final String uri = attributeValue(i);
+            if (uri.isEmpty() || prefix.equals("xmlns") || uri.equals(XMLNS_URI) ||
+                    prefix.equals("xml") != uri.equals(XML_URI))
+                return false;
+
+            if (mBoundPrefixes == null) {
+                mBoundPrefixes = new ArrayList<>();
+                mBoundUris = new ArrayList<>();
+                mBoundDepths = new ArrayList<>();
+            }
+            mBoundPrefixes.add(prefix);
+            mBoundUris.add(uri);
+            mBoundDepths.add(depth);
+        }
+        return true;
+    }
+
+    // Forgets the prefixes declared by the tag at the given depth once it's closed
+    private void unbindPrefixes(final int depth) {
+        if (mBoundPrefixes == null)
+            return;
+
+        for (int i = mBoundDepths.size() - 1; i >= 0 && mBoundDepths.get(i) >= depth; --i) {
+            mBoundPrefixes.remove(i);
+            mBoundUris.remove(i);
+            mBoundDepths.remove(i);
+        }
+    }
+
+    // The URI the prefix between start and end stands for, or null if it's not declared
+    private String getUri(final int start, final int end) {
+        if (isRegion(start, end, "xml"))
+            return XML_URI;
+
+        if (mBoundPrefixes != null) {
+            // The innermost declaration wins
+            for (int i = mBoundPrefixes.size() - 1; i >= 0; --i)
+                if (isRegion(start, end, mBoundPrefixes.get(i)))
+                    return mBoundUris.get(i);
+        }
+        return null; // xmlns is never bound, and it can't be used by tags
+    }
+
+    private boolean isElementPrefixBound(final int nameStart, final int nameEnd) {
+        final int colon = prefixEnd(nameStart, nameEnd);
+        return colon < 0 || getUri(nameStart, colon) != null;
+    }
+
+    //endregion
+}
@@ -1,23 +1,39 @@
 package io.github.lonamiwebs.stringlate.classes.resources.tags;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class ResPlurals {
 
+    //region Constants
+
+    // The quantities defined by CLDR, each of them has its own slot (in this order)
+    private static final String[] QUANTITIES = {"zero", "one", "two", "few", "many", "other"};
+
+    //endregion
+
     //region Members
 
-    private final HashSet<Item> mItems;
+    private final Item[] mItems;
+    private ArrayList<Item> mOtherItems; // Unknown quantities, which should not really happen
     private final String mId;
+    private final IdPool mIdPool; // Used to intern the IDs of the items, may be null
 
     //endregion
 
     //region Constructor
 
     public ResPlurals(final String id) {
+        this(id, null);
+    }
+
+    public ResPlurals(final String id, final IdPool idPool) {
         if (id == null)
             throw new IllegalArgumentException();
-        mItems = new HashSet<>();
-        mId = id;
+        mItems = new Item[QUANTITIES.length];
+        mIdPool = idPool;
+        mId = idPool == null ? id : idPool.intern(id);
     }
 
     //endregion
@@ -32,21 +48,67 @@ public class ResPlurals {
         if (quantity == null)
             throw new IllegalArgumentException();
 
-        for (Item i : mItems)
-            if (i.mQuantity.equals(quantity))
-                return i;
+        final int slot = getSlot(quantity);
+        if (slot != -1)
+            return mItems[slot];
+
+        if (mOtherItems != null)
+            for (Item i : mOtherItems)
+                if (i.mQuantity.equals(quantity))
+                    return i;
         return null;
     }
 
+    private static int getSlot(final String quantity) {
+        for (int i = 0; i < QUANTITIES.length; ++i)
+            if (QUANTITIES[i].equals(quantity))
+                return i;
+        return -1;
+    }
+
+    // Iterates over the existing items in CLDR order (zero, one, two, few, many, other)
     public Iterable<Item> expand() {
-        return mItems;
+        return new Iterable<Item>() {
+            @Override
+            public Iterator<Item> iterator() {
+                return new Iterator<Item>() {
+                    int i = skipMissing(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < mItems.length + (mOtherItems == null ? 0 : mOtherItems.size());
+                    }
+
+                    @Override
+                    public Item next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        final Item result = i < mItems.length ?
+                                mItems[i] : mOtherItems.get(i - mItems.length);
+                        i = skipMissing(i + 1);
+                        return result;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private int skipMissing(int i) {
+        while (i < mItems.length && mItems[i] == null)
+            i++;
+        return i;
     }
 
     private ResPlurals fakeClone() {
         // We're losing the original items… But this is the desired behaviour
         // because when setting the content for a new translation for the first
         // time, we need it to be a new parent
-        return new ResPlurals(mId);
+        return new ResPlurals(mId, mIdPool);
     }
 
     //endregion
@@ -55,7 +117,16 @@ public class ResPlurals {
 
     public Item addItem(final String quantity, final String content, final boolean modified) {
         Item result = new Item(this, quantity, content, modified);
-        mItems.add(result);
+        final int slot = getSlot(quantity);
+        if (slot != -1) {
+            mItems[slot] = result;
+        } else {
+            if (mOtherItems == null)
+                mOtherItems = new ArrayList<>(1);
+            else
+                mOtherItems.remove(getItem(quantity));
+            mOtherItems.add(result);
+        }
         return result;
     }
 
@@ -66,6 +137,7 @@ public class ResPlurals {
     public class Item extends ResTag {
         final ResPlurals mParent;
         final String mQuantity;
+        final String mId;
 
         Item(final ResPlurals parent, final String quantity, final String content,
              final boolean modified) {
@@ -73,14 +145,18 @@ public class ResPlurals {
                 throw new IllegalArgumentException("Some of the arguments were null");
             mParent = parent;
             mQuantity = quantity;
+
+            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts.
+            // The ID is used a lot (e.g. for hashing or sorting), so build it only once
+            final String id = parent.mId + ':' + quantity;
+            mId = parent.mIdPool == null ? id : parent.mIdPool.intern(id);
             mContent = content.trim();
             mModified = modified;
         }
 
         @Override
         public String getId() {
-            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
-            return String.format("%s:%s", mParent.mId, mQuantity);
+            return mId;
         }
 
         @Override
@@ -1,24 +1,30 @@
 package io.github.lonamiwebs.stringlate.classes.resources.tags;
 
-import java.util.HashSet;
-import java.util.Locale;
+import java.util.Collections;
+import java.util.TreeMap;
 
 public class ResStringArray {
 
     //region Members
 
-    private final HashSet<Item> mItems;
+    private final TreeMap<Integer, Item> mItems; // By index, which may have gaps
     private final String mId;
+    private final IdPool mIdPool; // Used to intern the IDs of the items, may be null
 
     //endregion
 
     //region Constructor
 
     public ResStringArray(final String id) {
+        this(id, null);
+    }
+
+    public ResStringArray(final String id, final IdPool idPool) {
         if (id == null)
             throw new IllegalArgumentException();
-        mItems = new HashSet<>();
-        mId = id;
+        mItems = new TreeMap<>();
+        mIdPool = idPool;
+        mId = idPool == null ? id : idPool.intern(id);
     }
 
     //endregion
@@ -30,34 +36,34 @@ public class ResStringArray {
     }
 
     public Item getItem(final int i) {
-        for (Item item : mItems)
-            if (item.getIndex() == i)
-                return item;
-
-        return null;
+        return mItems.get(i);
     }
 
+    // Iterates over the existing items in index order
     public Iterable<Item> expand() {
-        return mItems;
+        return Collections.unmodifiableCollection(mItems.values());
     }
 
     private ResStringArray fakeClone() {
         // We're losing the original items… But this is the desired behaviour
         // because when setting the content for a new translation for the first
         // time, we need it to be a new parent
-        return new ResStringArray(mId);
+        return new ResStringArray(mId, mIdPool);
     }
 
     //endregion
 
     //region Setters
 
+    // Items always keep their index, replacing the item there if any. Only the
+    // sparse map grows with the items, so even huge indices take no extra space
     public Item addItem(final String content, final boolean modified, final int index) {
         if (content == null)
             throw new IllegalArgumentException();
-        int i = index < 0 ? mItems.size() : index; // Auto-detect index if -1 (negative)
+        // Auto-detect index if -1 (negative), after the last item
+        int i = index >= 0 ? index : (mItems.isEmpty() ? 0 : mItems.lastKey() + 1);
         Item result = new Item(this, i, content, modified);
-        mItems.add(result);
+        mItems.put(i, result);
         return result;
     }
 
@@ -68,6 +74,7 @@ public class ResStringArray {
     public class Item extends ResTag {
         final ResStringArray mParent;
         final int mIndex;
+        final String mId;
 
         Item(final ResStringArray parent,
              final int index, String content, final boolean modified) {
@@ -75,14 +82,18 @@ public class ResStringArray {
                 throw new IllegalArgumentException();
             mParent = parent;
             mIndex = index;
+
+            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts.
+            // The ID is used a lot (e.g. for hashing or sorting), so build it only once
+            final String id = parent.mId + ':' + index;
+            mId = parent.mIdPool == null ? id : parent.mIdPool.intern(id);
             mContent = content.trim();
             mModified = modified;
         }
 
         @Override
         public String getId() {
-            // ':' is not a valid separator for the <string>'s, so use it to avoid conflicts
-            return String.format(Locale.ENGLISH, "%s:%d", mParent.mId, mIndex);
+            return mId;
         }
 
         public int getIndex() {
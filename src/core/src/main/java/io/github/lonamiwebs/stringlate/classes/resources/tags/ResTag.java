@@ -1,12 +1,5 @@
 package io.github.lonamiwebs.stringlate.classes.resources.tags;
 
-import org.xml.sax.InputSource;
-
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public abstract class ResTag implements Comparable<ResTag> {
 
     //region Static members
@@ -196,24 +189,9 @@ public abstract class ResTag implements Comparable<ResTag> {
         int length = content.length();
         StringBuilder sb = new StringBuilder(length + 16); // 16 seems to be the default capacity
 
-        boolean replaceLtGt = false;
-        if (content.contains("<")) {
-            // The string contains (X|HT)ML tags, ensure it's valid by parsing the content
-            // If it's not, then replace every <> with &lt; &gt; not to break the XML file
-            try {
-                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                factory.setValidating(false);
-                factory.setNamespaceAware(true);
-
-                DocumentBuilder builder = factory.newDocumentBuilder();
-                // Every XML needs to have a root tag, however, this is not the case for
-                // Android strings, and so we need to wrap it around some arbitrary tags
-                // in order to check whether the inner content is right or not.
-                builder.parse(new InputSource(new StringReader("<a>" + content + "</a>")));
-            } catch (Exception ignored) {
-                replaceLtGt = true;
-            }
-        }
+        // If the string contains (X|HT)ML tags, ensure they're valid, and if
+        // not, replace every <> with &lt; &gt; not to break the XML file
+        final boolean replaceLtGt = content.indexOf('<') >= 0 && !MarkupValidator.isWellFormed(content);
 
         // Keep track of insideAngleBrackets to escape " only if we're outside.
         boolean insideAngleBrackets = false;
@@ -5,17 +5,29 @@ import net.gsantner.opoc.util.FileUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import io.github.lonamiwebs.stringlate.classes.Messenger;
+import io.github.lonamiwebs.stringlate.classes.Metrics;
 import io.github.lonamiwebs.stringlate.classes.git.GitCloneProgressCallback;
 import io.github.lonamiwebs.stringlate.classes.git.GitWrapper;
 import io.github.lonamiwebs.stringlate.classes.resources.Resources;
 import io.github.lonamiwebs.stringlate.classes.resources.tags.ResTag;
 import io.github.lonamiwebs.stringlate.interfaces.StringsSource;
 
+import static io.github.lonamiwebs.stringlate.classes.Messenger.OnSyncProgress.STAGE_CLONE;
+import static io.github.lonamiwebs.stringlate.classes.Messenger.OnSyncProgress.STAGE_PARSE;
+
 public class GitSource implements StringsSource {
 
     private File mWorkDir;
@@ -24,8 +36,25 @@ public class GitSource implements StringsSource {
     private GitCloneProgressCallback mCloneCallback;
     private boolean mCancelled;
 
+    private String mHeadCommit;
+    private HashSet<String> mChangedPaths; // Since the last sync, null if unknown
+
+    // The locale files are parsed as soon as they're checked out, while the clone goes on
+    private ExecutorService mParser;
+    private final ConcurrentHashMap<File, Future<Resources>> mParsed;
+    private final AtomicInteger mParsedCount;
+    private volatile boolean mParseEagerly;
+
     private File iconFile;
 
+    private static final Metrics.Timer CLONE_TIMER = Metrics.timer("sync.clone");
+    private static final Metrics.Timer UPDATE_TIMER = Metrics.timer("sync.update");
+    private static final Metrics.Timer DISCOVER_TIMER = Metrics.timer("sync.discover");
+
+    private static final String KEY_GIT_URL = "git_url";
+    private static final String KEY_BRANCH = "branch";
+    private static final String KEY_SYNCED_COMMIT = "synced_commit";
+
     // Match locale from "values-(…)/strings.xml"
     private final static Pattern VALUES_LOCALE_PATTERN =
             Pattern.compile("values(?:-([\\w-]+))?/.+?\\.xml");
@@ -38,38 +67,87 @@ public class GitSource implements StringsSource {
         mGitUrl = gitUrl;
         mBranch = branch;
         mLocaleFiles = new HashMap<>();
+        mParsed = new ConcurrentHashMap<>();
+        mParsedCount = new AtomicInteger();
     }
 
     @Override
     public boolean setup(final SourceSettings settings, final File workDir,
                          final int desiredIconDpi,
                          final Messenger.OnSyncProgress callback) {
-        callback.onUpdate(1, 0f);
+        callback.onUpdate(STAGE_CLONE, 0f);
 
-        settings.set("git_url", mGitUrl);
+        // The work directory is kept between synchronizations, so if it was last synced
+        // from the same place, only fetch what's new and look at what changed since then
+        final Object syncedCommit = settings.get(KEY_SYNCED_COMMIT);
+        final boolean sameOrigin = mGitUrl.equals(settings.get(KEY_GIT_URL)) &&
+                mBranch.equals(settings.get(KEY_BRANCH)) && syncedCommit instanceof String;
+
+        settings.set(KEY_GIT_URL, mGitUrl);
+        settings.set(KEY_BRANCH, mBranch);
         mWorkDir = workDir;
 
-        // 2. Clone the repository itself
-        mCloneCallback = new GitCloneProgressCallback(callback);
-        if (!GitWrapper.cloneRepo(
-                mGitUrl, mWorkDir, mBranch, mCloneCallback) || mCancelled) {
-            // TODO These messages are still useful, show them somehow?
-            //callback.showMessage(context.getString(R.string.invalid_repo));
+        // 2. Clone the repository itself (or update the existing clone)
+        mParser = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        mCloneCallback = new GitCloneProgressCallback(callback) {
+            @Override
+            public void onCheckedOut(final File file) {
+                if (mParseEagerly)
+                    parseEagerly(file, callback);
+            }
+        };
+        long start = Metrics.start();
+        final boolean updated = sameOrigin &&
+                GitWrapper.updateRepo(mGitUrl, mWorkDir, mBranch, mCloneCallback);
+        if (updated)
+            UPDATE_TIMER.stop(start);
+
+        if (mCancelled)
             return false;
+
+        if (!updated) {
+            if (mWorkDir.exists() && !FileUtils.deleteRecursive(mWorkDir))
+                return false;
+
+            // When updating, only the few locales which changed will be parsed,
+            // but everything is new after cloning, so start parsing it right away
+            mParseEagerly = true;
+
+            start = Metrics.start();
+            if (!GitWrapper.cloneRepoSparse(
+                    mGitUrl, mWorkDir, mBranch, mCloneCallback) || mCancelled) {
+                // TODO These messages are still useful, show them somehow?
+                //callback.showMessage(context.getString(R.string.invalid_repo));
+                return false;
+            }
+            CLONE_TIMER.stop(start);
+            mParseEagerly = false;
+            mParser.shutdown(); // Already parsing all that will be needed
         }
 
+        callback.onUpdate(STAGE_CLONE, 1f);
+
+        mHeadCommit = GitWrapper.getHeadCommit(mWorkDir);
+        mChangedPaths = updated && mHeadCommit != null ?
+                GitWrapper.getChangedPaths(mWorkDir, (String) syncedCommit, mHeadCommit) : null;
+
         // Cache all the repository resources here for faster look-up on upcoming methods
+        start = Metrics.start();
         final GitWrapper.RepositoryResources repoResources =
                 GitWrapper.findUsefulResources(mWorkDir);
 
         final ArrayList<File> resourceFiles = GitWrapper.searchAndroidResources(repoResources);
+        DISCOVER_TIMER.stop(start);
         if (resourceFiles.isEmpty() || mCancelled) {
             //callback.showMessage(context.getString(R.string.no_strings_found));
             return false;
         }
 
-        // Save the branches of this repository
-        settings.setArray("remote_branches", GitWrapper.getBranches(mWorkDir));
+        // Save the branches of this repository (only one of them was cloned)
+        ArrayList<String> branches = GitWrapper.getRemoteBranches(mGitUrl);
+        if (branches.isEmpty())
+            branches = GitWrapper.getBranches(mWorkDir);
+        settings.setArray("remote_branches", branches);
 
         iconFile = GitWrapper.findProperIcon(repoResources, desiredIconDpi);
 
@@ -95,14 +173,55 @@ public class GitSource implements StringsSource {
         }
 
         settings.set("translation_service", GitWrapper.mayUseTranslationServices(repoResources));
+
+        // If nothing was parsed eagerly, it will be parsed while merging
+        if (mParsed.isEmpty())
+            callback.onUpdate(STAGE_PARSE, 1f);
+
         return !mCancelled;
     }
 
+    // Queues the file to be parsed if it belongs to some (non-default) locale, since
+    // those will need to be merged. The default ones are only copied, so not needed.
+    private void parseEagerly(final File file, final Messenger.OnSyncProgress callback) {
+        final Matcher m = VALUES_LOCALE_PATTERN.matcher(file.getAbsolutePath());
+        if (!m.find() || m.group(1) == null)
+            return;
+
+        mParsed.put(file, mParser.submit(new Callable<Resources>() {
+            @Override
+            public Resources call() {
+                final Resources result = Resources.fromFile(file);
+                callback.onUpdate(STAGE_PARSE, (float) mParsedCount.incrementAndGet() / mParsed.size());
+                return result;
+            }
+        }));
+    }
+
+    // Returns the resources parsed in the background for the file, or parses them now
+    private Resources getParsedResources(final File file) {
+        final Future<Resources> parsed = mParsed.get(file);
+        if (parsed != null) {
+            try {
+                return parsed.get();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return Resources.fromFile(file);
+    }
+
     @Override
     public void cancel() {
         if (mCloneCallback != null) {
             mCloneCallback.cancel();
         }
+        if (mParser != null) {
+            mParser.shutdownNow();
+        }
         mCancelled = true;
     }
 
@@ -124,7 +243,7 @@ public class GitSource implements StringsSource {
     public Resources getResources(final String locale) {
         final Resources result = Resources.empty();
         for (File file : mLocaleFiles.get(locale)) {
-            for (ResTag rt : Resources.fromFile(file))
+            for (ResTag rt : getParsedResources(file))
                 result.addTag(rt);
         }
         return result;
@@ -162,13 +281,46 @@ public class GitSource implements StringsSource {
         return iconFile;
     }
 
+    @Override
+    public boolean wasModified(final String locale) {
+        if (mChangedPaths == null)
+            return true;
+
+        final ArrayList<File> files = mLocaleFiles.get(locale);
+        if (files == null)
+            return true;
+
+        for (File file : files)
+            if (mChangedPaths.contains(getDefaultResourceName(file).replace(File.separatorChar, '/')))
+                return true;
+
+        return false;
+    }
+
+    @Override
+    public void markSynced(final SourceSettings settings) {
+        if (mHeadCommit != null)
+            settings.set(KEY_SYNCED_COMMIT, mHeadCommit);
+    }
+
+    // The branch the settings were last set up with, or null if they never were
+    public static String getBranch(final SourceSettings settings) {
+        final Object branch = settings.get(KEY_BRANCH);
+        return branch instanceof String ? (String) branch : null;
+    }
+
     private String getDefaultResourceName(final File file) {
         return file.getAbsolutePath().substring(mWorkDir.getAbsolutePath().length() + 1);
     }
 
     @Override
     public void dispose() {
-        FileUtils.deleteRecursive(mWorkDir);
+        // The work directory is kept, so that it can be updated on the next sync
+        if (mParser != null) {
+            mParser.shutdownNow();
+            mParser = null;
+        }
+        mParsed.clear();
         mLocaleFiles.clear();
         iconFile = null;
     }
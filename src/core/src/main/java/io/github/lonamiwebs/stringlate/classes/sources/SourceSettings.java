@@ -1,20 +1,19 @@
 package io.github.lonamiwebs.stringlate.classes.sources;
 
-import net.gsantner.opoc.util.FileUtils;
-
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.File;
 import java.util.ArrayList;
 
+import io.github.lonamiwebs.stringlate.classes.SettingsStore;
+
 // Custom settings that different StringsSource may need
 public class SourceSettings {
 
     private static final String FILENAME = "source-settings.json";
     private final File mSettingsFile;
-    private JSONObject mSettings;
+    private final SettingsStore mStore;
 
     private static final String KEY_NAME = "_name";
     private static final String DEFAULT_NAME = "";
@@ -23,7 +22,7 @@ public class SourceSettings {
 
     public SourceSettings(final File directory) {
         mSettingsFile = new File(directory, FILENAME);
-        mSettings = load();
+        mStore = SettingsStore.forFile(mSettingsFile);
     }
 
     //endregion
@@ -31,18 +30,18 @@ public class SourceSettings {
     //region Getters
 
     public String getName() {
-        return mSettings.optString(KEY_NAME, DEFAULT_NAME);
+        return mStore.get().optString(KEY_NAME, DEFAULT_NAME);
     }
 
     public Object get(final String name) {
-        return mSettings.opt(name);
+        return mStore.get().opt(name);
     }
 
     @SuppressWarnings("unchecked")
     public <T> ArrayList<T> getArray(final String name) {
         final ArrayList<T> result = new ArrayList<>();
         try {
-            JSONArray array = mSettings.optJSONArray(name);
+            JSONArray array = mStore.get().optJSONArray(name);
             if (array == null)
                 return result;
 
@@ -63,57 +62,40 @@ public class SourceSettings {
     //region Setters
 
     public void setName(final String name) {
-        try {
-            mSettings.put(KEY_NAME, name);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(KEY_NAME, name);
     }
 
     public void set(final String name, final Object object) {
         if (name.startsWith("_"))
             throw new IllegalArgumentException("Names for the source settings cannot start with underscore (_).");
-        try {
-            mSettings.put(name, object);
-        } catch (JSONException ignored) {
-        }
-        save();
+        mStore.put(name, object);
     }
 
     public void setArray(final String name, final ArrayList objects) {
         if (name.startsWith("_"))
             throw new IllegalArgumentException("Names for the source settings cannot start with underscore (_).");
-        try {
-            JSONArray array = new JSONArray();
-            for (Object branch : objects)
-                array.put(branch);
-            mSettings.put(name, array);
-        } catch (JSONException ignored) {
-        }
-        save();
+        JSONArray array = new JSONArray();
+        for (Object branch : objects)
+            array.put(branch);
+        mStore.put(name, array);
     }
 
     //endregion
 
     //region Load/save/reset
 
-    private JSONObject load() {
-        try {
-            final String json = FileUtils.readTextFile(mSettingsFile);
-            if (!json.isEmpty())
-                return new JSONObject(json);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return new JSONObject();
+    // Settings are written a short while after they change, flush() writes them now
+    public boolean flush() {
+        return mStore.flush();
     }
 
-    public boolean save() {
-        return FileUtils.writeFile(mSettingsFile, mSettings.toString());
+    // Forgets the changes not written yet, and any later ones
+    public void discard() {
+        mStore.discard();
     }
 
     public void reset(final String newName) {
-        mSettings = new JSONObject();
+        mStore.reset();
         setName(newName);
     }
 
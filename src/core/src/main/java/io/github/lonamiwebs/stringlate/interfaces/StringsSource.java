@@ -43,6 +43,15 @@ public interface StringsSource {
     // May return a File pointing to an existing icon for this source, or null
     File getIcon();
 
-    // Any temporary resource used by the source should be cleaned up here.
+    // Determines whether the resources for the given locale (or the default ones if null)
+    // may have changed since the last synchronization. If unsure, it should return true.
+    boolean wasModified(final String locale);
+
+    // Called after the synchronization finished successfully, so that the
+    // source can remember what was synchronized for the next time it's used
+    void markSynced(final SourceSettings settings);
+
+    // Any temporary resource used by the source should be cleaned up here. Sources
+    // may keep the work directory given on setup to reuse it on the next sync.
     void dispose();
 }